@@ -0,0 +1,51 @@
+package dbproject.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dbproject.model.Cell;
+import dbproject.model.DataType;
+
+/**
+ * Cost of parsing a single literal with Cell.parseCell
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellParseBenchmark {
+    private static final int LITERAL_COUNT = 1024;
+
+    @Param({"INTEGER", "FLOAT", "STRING"})
+    public DataType type;
+
+    @Param({"16"})
+    public int stringLength;
+
+    private String[] literals;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        literals = TableGenerator.literals(LITERAL_COUNT, type, stringLength, 42);
+    }
+
+    @Benchmark
+    public Cell parseCell() {
+        next = (next + 1) & (LITERAL_COUNT - 1);
+        return Cell.parseCell(literals[next], type);
+    }
+}
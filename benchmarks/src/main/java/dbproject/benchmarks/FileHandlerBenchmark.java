@@ -0,0 +1,79 @@
+package dbproject.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dbproject.model.DataType;
+import dbproject.model.FileHandler;
+import dbproject.model.Table;
+
+/**
+ * FileHandler.saveTable and loadTable in the text and binary formats
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileHandlerBenchmark {
+    private static final DataType[] TYPES = {DataType.INTEGER, DataType.FLOAT, DataType.STRING};
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"16"})
+    public int stringLength;
+
+    /**
+     * File extension, which selects the format
+     */
+    @Param({"tbl", "tblb"})
+    public String format;
+
+    private Table table;
+    private File directory;
+    private String loadFile;
+    private String saveFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        table = TableGenerator.generate("files", rows, TYPES, 1000, stringLength, 42);
+        directory = Files.createTempDirectory("dbproject-bench").toFile();
+        loadFile = new File(directory, "load." + format).getPath();
+        saveFile = new File(directory, "save." + format).getPath();
+        FileHandler.saveTable(table, loadFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(loadFile).delete();
+        new File(saveFile).delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public void saveTable() throws IOException {
+        FileHandler.saveTable(table, saveFile);
+    }
+
+    @Benchmark
+    public Table loadTable() throws IOException {
+        return FileHandler.loadTable("files", loadFile);
+    }
+}
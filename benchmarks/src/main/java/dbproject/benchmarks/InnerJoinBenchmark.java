@@ -0,0 +1,65 @@
+package dbproject.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dbproject.model.DataType;
+import dbproject.model.DatabaseManager;
+import dbproject.model.Table;
+
+/**
+ * DatabaseManager.innerJoin on an INTEGER key with about one match per row
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InnerJoinBenchmark {
+    private static final DataType[] TYPES = {DataType.INTEGER, DataType.FLOAT, DataType.STRING};
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"16"})
+    public int stringLength;
+
+    private Table left;
+    private Table right;
+    private DatabaseManager manager;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        left = TableGenerator.generate("left", rows, TYPES, rows, stringLength, 1);
+        right = TableGenerator.generate("right", rows, TYPES, rows, stringLength, 2);
+    }
+
+    /**
+     * innerJoin registers its result, so every call needs a fresh catalog
+     */
+    @Setup(Level.Invocation)
+    public void createManager() {
+        manager = new DatabaseManager();
+        manager.addTable(left);
+        manager.addTable(right);
+    }
+
+    @Benchmark
+    public Table innerJoin() throws IOException {
+        return manager.innerJoin("left", 0, "right", 0);
+    }
+}
@@ -0,0 +1,106 @@
+package dbproject.benchmarks;
+
+import java.util.Random;
+
+import dbproject.model.Cell;
+import dbproject.model.DataType;
+import dbproject.model.Row;
+import dbproject.model.Table;
+
+/**
+ * Generates tables with random data for the benchmarks
+ */
+public class TableGenerator {
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private TableGenerator() {
+    }
+
+    /**
+     * Generates a table with one column per given type, named c0, c1, ...
+     * INTEGER values are drawn from [0, distinctValues), FLOAT values from
+     * [0, 1000) and STRING values are one of distinctValues random strings of
+     * the given length, so equality searches and joins hit rows / distinctValues
+     * rows on average. Every column gets about 1% NULLs.
+     */
+    public static Table generate(String name, int rows, DataType[] types, int distinctValues, int stringLength, long seed) {
+        Random random = new Random(seed);
+        String[] strings = new String[distinctValues];
+        for (int i = 0; i < distinctValues; i++) {
+            strings[i] = randomString(random, stringLength);
+        }
+
+        Table table = new Table(name);
+        for (int i = 0; i < types.length; i++) {
+            table.addColumn("c" + i, types[i]);
+        }
+        for (int r = 0; r < rows; r++) {
+            Row row = new Row();
+            for (DataType type : types) {
+                row.addCell(randomCell(random, type, distinctValues, strings));
+            }
+            table.addRow(row);
+        }
+        return table;
+    }
+
+    /**
+     * Returns a search value, written as in commands, that occurs in the
+     * generated column of the given type
+     */
+    public static String searchValue(Table table, int columnIndex) {
+        for (int r = 0; r < table.getRowCount(); r++) {
+            Cell cell = table.getRow(r).getCell(columnIndex);
+            if (cell.getValue() != null) {
+                return cell.toString();
+            }
+        }
+        return "NULL";
+    }
+
+    /**
+     * Generates literals of the given type, written as in commands and table files
+     */
+    public static String[] literals(int count, DataType type, int stringLength, long seed) {
+        Random random = new Random(seed);
+        String[] literals = new String[count];
+        for (int i = 0; i < count; i++) {
+            switch (type) {
+                case INTEGER:
+                    literals[i] = Integer.toString(random.nextInt());
+                    break;
+                case FLOAT:
+                    literals[i] = Double.toString(random.nextDouble() * 1000);
+                    break;
+                default:
+                    literals[i] = new Cell(randomString(random, stringLength), DataType.STRING).toString();
+                    break;
+            }
+        }
+        return literals;
+    }
+
+    private static Cell randomCell(Random random, DataType type, int distinctValues, String[] strings) {
+        if (random.nextInt(100) == 0) {
+            return new Cell(null, DataType.NULL);
+        }
+        switch (type) {
+            case INTEGER:
+                return new Cell(random.nextInt(distinctValues), DataType.INTEGER);
+            case FLOAT:
+                return new Cell(random.nextDouble() * 1000, DataType.FLOAT);
+            case STRING:
+                return new Cell(strings[random.nextInt(distinctValues)], DataType.STRING);
+            default:
+                return new Cell(null, DataType.NULL);
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,94 @@
+package dbproject.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dbproject.model.DataType;
+import dbproject.model.Row;
+import dbproject.model.Table;
+import dbproject.model.WhereExpression;
+
+/**
+ * Equality scans over a table: select, count and aggregate, alone and combined
+ * with a range on the FLOAT column in a WHERE expression. The fork adds the
+ * Vector API module so the vectorized scans are measured; run with
+ * -jvmArgsAppend -Ddbproject.vector=false to compare with the scalar ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class TableScanBenchmark {
+    private static final DataType[] TYPES = {DataType.INTEGER, DataType.FLOAT, DataType.STRING};
+    private static final List<String> ALL_OPERATIONS =
+        Arrays.asList("sum", "product", "maximum", "minimum", "count", "average");
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    /**
+     * Column searched by select and count: 0 INTEGER, 2 STRING
+     */
+    @Param({"0", "2"})
+    public int searchColumn;
+
+    @Param({"16"})
+    public int stringLength;
+
+    private Table table;
+    private String searchValue;
+    private WhereExpression where;
+
+    @Setup
+    public void setUp() {
+        table = TableGenerator.generate("scan", rows, TYPES, 1000, stringLength, 42);
+        searchValue = TableGenerator.searchValue(table, searchColumn);
+        where = WhereExpression.parse(searchColumn + " = " + searchValue + " AND 1 < 500");
+    }
+
+    @Benchmark
+    public List<Row> select() {
+        return table.select(searchColumn, searchValue);
+    }
+
+    @Benchmark
+    public int count() {
+        return table.count(searchColumn, searchValue);
+    }
+
+    @Benchmark
+    public Object aggregateSum() {
+        return table.aggregate(searchColumn, searchValue, 1, "sum");
+    }
+
+    @Benchmark
+    public Map<String, Object> aggregateAll() {
+        return table.aggregate(searchColumn, searchValue, 1, ALL_OPERATIONS);
+    }
+
+    @Benchmark
+    public int countWhere() {
+        return table.count(where);
+    }
+
+    @Benchmark
+    public Map<String, Object> aggregateWhere() {
+        return table.aggregate(where, 1, ALL_OPERATIONS);
+    }
+}
@@ -1,15 +1,20 @@
 package dbproject.controller;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 // Model imports
 import dbproject.model.DatabaseManager;
+import dbproject.model.QueryPlan;
+import dbproject.model.ResultCache;
 import dbproject.model.Table;
-import dbproject.model.Row;
+import dbproject.model.WhereExpression;
+import dbproject.model.RowCursor;
 import dbproject.model.Column;
-import dbproject.model.Cell;
 import dbproject.model.DataType;
 
 // View imports
@@ -20,28 +25,47 @@ import dbproject.view.TablePrinter;
 public class CommandProcessor {
     private DatabaseManager dbManager;
     private Scanner scanner;
+    private PrintStream out;
+    private boolean interactive;
+    private int pageSize = TablePrinter.DEFAULT_PAGE_SIZE;
     
     public CommandProcessor() {
-        this.dbManager = new DatabaseManager();
-        this.scanner = new Scanner(System.in);
+        this(new DatabaseManager(), new Scanner(System.in), System.out, true);
     }
     
     /**
-     * Runs the command processor
+     * Creates a processor reading commands from the given input. Interactive
+     * sessions own the database and page through tables; other sessions, such
+     * as server connections, share the database, print tables in full and
+     * can't open or close it.
+     */
+    public CommandProcessor(DatabaseManager dbManager, Scanner scanner, PrintStream out, boolean interactive) {
+        this.dbManager = dbManager;
+        this.scanner = scanner;
+        this.out = out;
+        this.interactive = interactive;
+    }
+    
+    /**
+     * Runs the command processor until exit or the end of the input
      */
     public void run() {
         boolean running = true;
-        System.out.println("Database Management System");
-        System.out.println("Type 'help' for a list of commands");
+        out.println("Database Management System");
+        out.println("Type 'help' for a list of commands");
         
         while (running) {
-            System.out.print("> ");
+            out.print("> ");
+            out.flush();
+            if (!scanner.hasNextLine()) {
+                break;
+            }
             String command = scanner.nextLine().trim();
             
             try {
                 running = processCommand(command);
             } catch (Exception e) {
-                System.out.println("Error: " + e.getMessage());
+                out.println("Error: " + e.getMessage());
             }
         }
     }
@@ -57,33 +81,65 @@ public class CommandProcessor {
         String[] parts = command.split("\\s+");
         String cmd = parts[0].toLowerCase();
         
+        if (!interactive && (cmd.equals("open") || cmd.equals("close"))) {
+            out.println("The database is shared with other sessions and can't be opened or closed here");
+            return true;
+        }
+        
         switch (cmd) {
             case "open":
                 if (parts.length < 2) {
-                    System.out.println("Usage: open <file name>");
+                    out.println("Usage: open <file name>");
                     return true;
                 }
                 dbManager.openDatabase(parts[1]);
-                System.out.println("Database opened: " + parts[1]);
+                out.println("Database opened: " + parts[1]);
                 return true;
                 
             case "close":
+                long memoryBudget = dbManager.getMemoryBudget();
+                dbManager.close();
                 dbManager = new DatabaseManager();
-                System.out.println("Database closed");
+                dbManager.setMemoryBudget(memoryBudget);
+                out.println("Database closed");
                 return true;
                 
             case "save":
                 dbManager.saveDatabase();
-                System.out.println("Database saved");
+                out.println("Database saved");
                 return true;
                 
             case "saveas":
                 if (parts.length < 2) {
-                    System.out.println("Usage: saveas <file name>");
+                    out.println("Usage: saveas <file name>");
                     return true;
                 }
                 dbManager.saveAsDatabase(parts[1]);
-                System.out.println("Database saved as: " + parts[1]);
+                out.println("Database saved as: " + parts[1]);
+                return true;
+                
+            case "budget":
+                if (parts.length < 2) {
+                    out.println("Memory budget: " + dbManager.getMemoryBudget() / (1024 * 1024) + " MB, "
+                        + "loaded tables use about " + dbManager.getLoadedTablesSize() / (1024 * 1024) + " MB");
+                    return true;
+                }
+                dbManager.setMemoryBudget(Long.parseLong(parts[1]) * 1024 * 1024);
+                out.println("Memory budget set to " + parts[1] + " MB");
+                return true;
+                
+            case "pagesize":
+                if (parts.length < 2) {
+                    out.println("Page size: " + (pageSize == 0 ? "no paging" : pageSize + " rows"));
+                    return true;
+                }
+                int newPageSize = Integer.parseInt(parts[1]);
+                if (newPageSize < 0) {
+                    out.println("Page size can't be negative");
+                    return true;
+                }
+                pageSize = newPageSize;
+                out.println(pageSize == 0 ? "Tables are now printed in full" : "Page size set to " + pageSize + " rows");
                 return true;
                 
             case "help":
@@ -91,106 +147,176 @@ public class CommandProcessor {
                 return true;
                 
             case "exit":
+                if (interactive) {
+                    dbManager.close();
+                }
                 return false;
                 
             case "import":
                 if (parts.length < 2) {
-                    System.out.println("Usage: import <file name>");
+                    out.println("Usage: import <file name>");
                     return true;
                 }
                 dbManager.importTable(parts[1]);
-                System.out.println("Table imported from: " + parts[1]);
+                out.println("Table imported from: " + parts[1]);
                 return true;
                 
             case "showtables":
                 List<String> tableNames = dbManager.getTableNames();
                 if (tableNames.isEmpty()) {
-                    System.out.println("No tables in the database");
+                    out.println("No tables in the database");
                 } else {
-                    System.out.println("Tables:");
+                    out.println("Tables:");
                     for (String name : tableNames) {
-                        System.out.println("- " + name);
+                        out.println("- " + name);
                     }
                 }
                 return true;
                 
             case "describe":
                 if (parts.length < 2) {
-                    System.out.println("Usage: describe <table name>");
+                    out.println("Usage: describe <table name>");
                     return true;
                 }
                 Table descTable = dbManager.getTable(parts[1]);
-                System.out.println("Table: " + descTable.getName());
-                System.out.println("Columns:");
+                out.println("Table: " + descTable.getName());
+                out.println("Columns:");
                 List<Column> columns = descTable.getColumns();
                 for (int i = 0; i < columns.size(); i++) {
-                    System.out.println(i + ": " + columns.get(i).getName() + " (" + columns.get(i).getType() + ")");
+                    String encoding = descTable.isDictionaryEncoded(i) ? ", dictionary" : "";
+                    out.println(i + ": " + columns.get(i).getName() + " (" + columns.get(i).getType() + encoding + ")");
                 }
                 return true;
                 
             case "print":
                 if (parts.length < 2) {
-                    System.out.println("Usage: print <table name>");
+                    out.println("Usage: print <table name>");
                     return true;
                 }
                 Table printTable = dbManager.getTable(parts[1]);
-                TablePrinter.printTable(printTable, scanner);
+                printRows(printTable.cursor());
                 return true;
                 
             case "export":
                 if (parts.length < 3) {
-                    System.out.println("Usage: export <table name> <file name>");
+                    out.println("Usage: export <table name> <file name>");
                     return true;
                 }
                 dbManager.exportTable(parts[1], parts[2]);
-                System.out.println("Table exported to: " + parts[2]);
+                out.println("Table exported to: " + parts[2]);
+                return true;
+                
+            case "convert":
+                if (parts.length < 3) {
+                    out.println("Usage: convert <table name> <file name>");
+                    return true;
+                }
+                dbManager.convertTable(parts[1], parts[2]);
+                out.println("Table " + parts[1] + " converted to: " + parts[2]);
                 return true;
                 
             case "select":
-                if (parts.length < 4) {
-                    System.out.println("Usage: select <column-n> <value> <table name>");
+                if (parts.length >= 4 && parts[2].equalsIgnoreCase("where") && !isInteger(parts[1])) {
+                    Table whereTable = dbManager.getTable(parts[1]);
+                    WhereExpression selectWhere = parseWhere(parts, 2);
+                    dbManager.getResultCache().select(whereTable, normalize(parts, 2, selectWhere),
+                        () -> whereTable.cursor(selectWhere), this::printRows);
                     return true;
                 }
-                int selectColumnIndex = Integer.parseInt(parts[1]);
-                String selectValue = parts[2];
-                String selectTableName = parts[3];
+                printPlannedRows(parts);
+                return true;
                 
-                Table selectTable = dbManager.getTable(selectTableName);
-                List<Row> selectedRows = selectTable.select(selectColumnIndex, selectValue);
+            case "selectrange":
+                printPlannedRows(parts);
+                return true;
                 
-                // Create a temporary table with the selected rows
-                Table tempTable = new Table(selectTableName + "_selected");
-                for (Column column : selectTable.getColumns()) {
-                    tempTable.addColumn(column.getName(), column.getType());
+            case "explain":
+                if (parts.length < 2) {
+                    out.println("Usage: explain <select|selectrange|count|aggregate|innerjoin> <arguments>");
+                    return true;
                 }
-                for (Row row : selectedRows) {
-                    Row newRow = new Row();
-                    for (int i = 0; i < row.size(); i++) {
-                        newRow.addCell(new Cell(row.getCell(i).getValue(), row.getCell(i).getType()));
-                    }
-                    tempTable.addRow(newRow);
+                if (whereIndex(parts, 1) >= 0) {
+                    out.println("Only searches for a single value can be explained");
+                    return true;
                 }
+                QueryPlan explainPlan = planCommand(Arrays.copyOfRange(parts, 1, parts.length));
+                if (explainPlan != null) {
+                    out.println(explainPlan.explain(explainPlan.countRows()));
+                }
+                return true;
                 
-                TablePrinter.printTable(tempTable, scanner);
+            case "orderby":
+                if (parts.length < 3) {
+                    out.println("Usage: orderby <table name> <column n> [asc|desc] [limit]");
+                    return true;
+                }
+                Table orderTable = dbManager.getTable(parts[1]);
+                int orderColumnIndex = Integer.parseInt(parts[2]);
+                boolean descending = parts.length > 3 && parts[3].equalsIgnoreCase("desc");
+                if (parts.length > 3 && !descending && !parts[3].equalsIgnoreCase("asc")) {
+                    out.println("Unknown sort order: " + parts[3]);
+                    return true;
+                }
+                int limit = parts.length > 4 ? Integer.parseInt(parts[4]) : Integer.MAX_VALUE;
+                
+                printRows(orderTable.orderedCursor(orderColumnIndex, descending, limit));
                 return true;
                 
             case "addcolumn":
                 if (parts.length < 4) {
-                    System.out.println("Usage: addcolumn <table name> <column name> <column type>");
+                    out.println("Usage: addcolumn <table name> <column name> <column type>");
                     return true;
                 }
                 String addColumnTableName = parts[1];
                 String addColumnName = parts[2];
                 DataType addColumnType = DataType.valueOf(parts[3].toUpperCase());
                 
-                Table addColumnTable = dbManager.getTable(addColumnTableName);
-                addColumnTable.addColumn(addColumnName, addColumnType);
-                System.out.println("Column added: " + addColumnName);
+                dbManager.addColumn(addColumnTableName, addColumnName, addColumnType);
+                out.println("Column added: " + addColumnName);
+                return true;
+                
+            case "createindex":
+                if (parts.length < 3) {
+                    out.println("Usage: createindex <table name> <column n> [sorted]");
+                    return true;
+                }
+                String indexTableName = parts[1];
+                int indexColumnIndex = Integer.parseInt(parts[2]);
+                boolean sortedIndex = parts.length > 3 && parts[3].equalsIgnoreCase("sorted");
+                
+                dbManager.createIndex(indexTableName, indexColumnIndex, sortedIndex);
+                if (sortedIndex) {
+                    out.println("Sorted index created on column " + indexColumnIndex);
+                } else {
+                    out.println("Index created on column " + indexColumnIndex);
+                }
+                return true;
+                
+            case "encode":
+            case "decode":
+                if (parts.length < 3) {
+                    out.println("Usage: " + cmd + " <table name> <column n>");
+                    return true;
+                }
+                int encodeColumnIndex = Integer.parseInt(parts[2]);
+                boolean encode = cmd.equals("encode");
+                
+                dbManager.setDictionaryEncoded(parts[1], encodeColumnIndex, encode);
+                out.println("Column " + encodeColumnIndex + (encode ? " is now dictionary-encoded" : " now stores plain strings"));
                 return true;
                 
             case "update":
+                if (parts.length >= 3 && parts[2].equalsIgnoreCase("set")) {
+                    if (parts.length < 7 || !parts[5].equalsIgnoreCase("where")) {
+                        out.println("Usage: update <table name> set <target column n> <target value> where <expression>");
+                        return true;
+                    }
+                    dbManager.updateRows(parts[1], parseWhere(parts, 5), Integer.parseInt(parts[3]), parts[4]);
+                    out.println("Rows updated");
+                    return true;
+                }
                 if (parts.length < 6) {
-                    System.out.println("Usage: update <table name> <search column n> <search value> <target column n> <target value>");
+                    out.println("Usage: update <table name> <search column n> <search value> <target column n> <target value>");
                     return true;
                 }
                 String updateTableName = parts[1];
@@ -199,55 +325,55 @@ public class CommandProcessor {
                 int targetColumnIndex = Integer.parseInt(parts[4]);
                 String targetValue = parts[5];
                 
-                Table updateTable = dbManager.getTable(updateTableName);
-                updateTable.update(searchColumnIndex, searchValue, targetColumnIndex, targetValue);
-                System.out.println("Rows updated");
+                dbManager.updateRows(updateTableName, searchColumnIndex, searchValue, targetColumnIndex, targetValue);
+                out.println("Rows updated");
                 return true;
                 
             case "delete":
+                if (parts.length >= 3 && parts[2].equalsIgnoreCase("where")) {
+                    dbManager.deleteRows(parts[1], parseWhere(parts, 2));
+                    out.println("Rows deleted");
+                    return true;
+                }
                 if (parts.length < 4) {
-                    System.out.println("Usage: delete <table name> <search column n> <search value>");
+                    out.println("Usage: delete <table name> <search column n> <search value>");
                     return true;
                 }
                 String deleteTableName = parts[1];
                 int deleteColumnIndex = Integer.parseInt(parts[2]);
                 String deleteValue = parts[3];
                 
-                Table deleteTable = dbManager.getTable(deleteTableName);
-                deleteTable.delete(deleteColumnIndex, deleteValue);
-                System.out.println("Rows deleted");
+                dbManager.deleteRows(deleteTableName, deleteColumnIndex, deleteValue);
+                out.println("Rows deleted");
                 return true;
                 
             case "insert":
                 if (parts.length < 2) {
-                    System.out.println("Usage: insert <table name> <column 1> ... <column n>");
+                    out.println("Usage: insert <table name> <column 1> ... <column n>");
                     return true;
                 }
                 String insertTableName = parts[1];
-                Table insertTable = dbManager.getTable(insertTableName);
+                String[] insertValues = Arrays.copyOfRange(parts, 2, parts.length);
                 
-                if (parts.length - 2 != insertTable.getColumnCount()) {
-                    System.out.println("Error: Number of values doesn't match column count");
-                    return true;
-                }
-                
-                Row newRow = new Row();
-                List<Column> insertColumns = insertTable.getColumns();
+                dbManager.insertRow(insertTableName, insertValues);
+                out.println("Row inserted");
+                return true;
                 
-                for (int i = 0; i < insertColumns.size(); i++) {
-                    DataType columnType = insertColumns.get(i).getType();
-                    String value = parts[i + 2];
-                    Cell cell = Cell.parseCell(value, columnType);
-                    newRow.addCell(cell);
+            case "bulkload":
+                if (parts.length < 3) {
+                    out.println("Usage: bulkload <table name> <csv file>");
+                    return true;
                 }
+                String bulkLoadTableName = parts[1];
+                String bulkLoadFile = parts[2];
                 
-                insertTable.addRow(newRow);
-                System.out.println("Row inserted");
+                int loadedRows = dbManager.bulkLoad(bulkLoadTableName, bulkLoadFile);
+                out.println(loadedRows + " rows loaded into " + bulkLoadTableName);
                 return true;
                 
             case "innerjoin":
                 if (parts.length < 5) {
-                    System.out.println("Usage: innerjoin <table 1> <column n1> <table 2> <column n2>");
+                    out.println("Usage: innerjoin <table 1> <column n1> <table 2> <column n2>");
                     return true;
                 }
                 String table1Name = parts[1];
@@ -256,87 +382,281 @@ public class CommandProcessor {
                 int column2Index = Integer.parseInt(parts[4]);
                 
                 Table joinedTable = dbManager.innerJoin(table1Name, column1Index, table2Name, column2Index);
-                System.out.println("Joined table created: " + joinedTable.getName());
+                out.println("Joined table created: " + joinedTable.getName());
                 return true;
                 
             case "rename":
                 if (parts.length < 3) {
-                    System.out.println("Usage: rename <old name> <new name>");
+                    out.println("Usage: rename <old name> <new name>");
                     return true;
                 }
                 String oldName = parts[1];
                 String newName = parts[2];
                 
                 dbManager.renameTable(oldName, newName);
-                System.out.println("Table renamed from '" + oldName + "' to '" + newName + "'");
+                out.println("Table renamed from '" + oldName + "' to '" + newName + "'");
                 return true;
                 
             case "count":
-                if (parts.length < 4) {
-                    System.out.println("Usage: count <table name> <search column n> <search value>");
+                if (parts.length >= 3 && parts[2].equalsIgnoreCase("where")) {
+                    Table whereCountTable = dbManager.getTable(parts[1]);
+                    WhereExpression countWhere = parseWhere(parts, 2);
+                    out.println("Count: " + dbManager.getResultCache().count(whereCountTable,
+                        normalize(parts, 2, countWhere), () -> whereCountTable.count(countWhere)));
                     return true;
                 }
-                String countTableName = parts[1];
-                int countColumnIndex = Integer.parseInt(parts[2]);
-                String countValue = parts[3];
-                
-                Table countTable = dbManager.getTable(countTableName);
-                int count = countTable.count(countColumnIndex, countValue);
-                System.out.println("Count: " + count);
+                if (hasPlanArguments(parts)) {
+                    // Plan only on a cache miss, as planning takes a snapshot of the table
+                    out.println("Count: " + dbManager.getResultCache().count(dbManager.getTable(parts[1]),
+                        normalize(parts, parts.length, null), () -> planCommand(parts).count()));
+                }
                 return true;
                 
             case "aggregate":
-                if (parts.length < 6) {
-                    System.out.println("Usage: aggregate <table name> <search column n> <search value> <target column n> <operation>");
+                Map<String, Object> results;
+                ResultCache cache = dbManager.getResultCache();
+                int aggregateWhereIndex = whereIndex(parts, 4);
+                if (aggregateWhereIndex >= 0) {
+                    Table whereAggregateTable = dbManager.getTable(parts[1]);
+                    WhereExpression aggregateWhere = parseWhere(parts, aggregateWhereIndex);
+                    int whereTargetColumnIndex = Integer.parseInt(parts[2]);
+                    List<String> whereOperations = Arrays.asList(parts).subList(3, aggregateWhereIndex);
+                    results = cache.aggregate(whereAggregateTable, normalize(parts, aggregateWhereIndex, aggregateWhere),
+                        () -> whereAggregateTable.aggregate(aggregateWhere, whereTargetColumnIndex, whereOperations));
+                } else {
+                    if (!hasPlanArguments(parts)) {
+                        return true;
+                    }
+                    results = cache.aggregate(dbManager.getTable(parts[1]), normalize(parts, parts.length, null),
+                        () -> planCommand(parts).aggregate());
+                }
+                for (Map.Entry<String, Object> result : results.entrySet()) {
+                    out.println("Result of " + result.getKey() + ": " + result.getValue());
+                }
+                return true;
+                
+            case "cachestats":
+                ResultCache statsCache = dbManager.getResultCache();
+                out.println(String.format("Result cache: %d results using %.1f KB of %d MB",
+                    statsCache.getEntryCount(), statsCache.getMemoryBytes() / 1024.0,
+                    statsCache.getCapacityBytes() / (1024 * 1024)));
+                out.println(String.format("Hits: %d, misses: %d, hit rate: %.1f%%",
+                    statsCache.getHits(), statsCache.getMisses(), statsCache.getHitRate() * 100));
+                return true;
+                
+            case "groupby":
+                if (parts.length < 5) {
+                    out.println("Usage: groupby <table name> <key column n> <target column n> <operation> [<operation> ...]");
                     return true;
                 }
-                String aggregateTableName = parts[1];
-                int aggregateSearchColumnIndex = Integer.parseInt(parts[2]);
-                String aggregateSearchValue = parts[3];
-                int aggregateTargetColumnIndex = Integer.parseInt(parts[4]);
-                String aggregateOperation = parts[5];
+                Table groupTable = dbManager.getTable(parts[1]);
+                int groupKeyColumnIndex = Integer.parseInt(parts[2]);
+                int groupTargetColumnIndex = Integer.parseInt(parts[3]);
+                List<String> groupOperations = Arrays.asList(parts).subList(4, parts.length);
                 
-                Table aggregateTable = dbManager.getTable(aggregateTableName);
-                Object result = aggregateTable.aggregate(
-                    aggregateSearchColumnIndex, 
-                    aggregateSearchValue, 
-                    aggregateTargetColumnIndex, 
-                    aggregateOperation
-                );
+                Table groups = groupTable.groupBy(groupKeyColumnIndex, groupTargetColumnIndex, groupOperations);
+                printRows(groups.orderedCursor(0, false, Integer.MAX_VALUE));
+                return true;
+                
+            default:
+                out.println("Unknown command: " + cmd);
+                return true;
+        }
+    }
+    
+    /**
+     * Plans a select, selectrange, count, aggregate or innerjoin command with
+     * the database's planner; prints the usage and returns null if arguments
+     * are missing or the command can't be planned
+     */
+    private QueryPlan planCommand(String[] parts) {
+        if (!hasPlanArguments(parts)) {
+            return null;
+        }
+        String cmd = parts[0].toLowerCase();
+        switch (cmd) {
+            case "select":
+                Table selectTable = dbManager.getTable(parts[3]);
+                return dbManager.getPlanner().planSelect(selectTable, Integer.parseInt(parts[1]), parts[2]);
+                
+            case "selectrange":
+                Table rangeTable = dbManager.getTable(parts[1]);
+                return dbManager.getPlanner().planRange(rangeTable, Integer.parseInt(parts[2]), parts[3], parts[4]);
+                
+            case "count":
+                Table countTable = dbManager.getTable(parts[1]);
+                return dbManager.getPlanner().planCount(countTable, Integer.parseInt(parts[2]), parts[3]);
+                
+            case "aggregate":
+                Table aggregateTable = dbManager.getTable(parts[1]);
+                List<String> aggregateOperations = Arrays.asList(parts).subList(5, parts.length);
+                return dbManager.getPlanner().planAggregate(aggregateTable, Integer.parseInt(parts[2]), parts[3],
+                    Integer.parseInt(parts[4]), aggregateOperations);
+                
+            case "innerjoin":
+                return dbManager.planJoin(parts[1], Integer.parseInt(parts[2]), parts[3], Integer.parseInt(parts[4]));
+                
+            default:
+                out.println("Can't explain command: " + cmd);
+                return null;
+        }
+    }
+    
+    /**
+     * Checks that a command planCommand handles has all of its arguments,
+     * printing the usage if it doesn't
+     */
+    private boolean hasPlanArguments(String[] parts) {
+        switch (parts[0].toLowerCase()) {
+            case "select":
+                if (parts.length < 4) {
+                    out.println("Usage: select <column-n> <value> <table name>");
+                    return false;
+                }
+                return true;
+                
+            case "selectrange":
+                if (parts.length < 5) {
+                    out.println("Usage: selectrange <table name> <column n> <low> <high>");
+                    return false;
+                }
+                return true;
+                
+            case "count":
+                if (parts.length < 4) {
+                    out.println("Usage: count <table name> <search column n> <search value>");
+                    return false;
+                }
+                return true;
+                
+            case "aggregate":
+                if (parts.length < 6) {
+                    out.println("Usage: aggregate <table name> <search column n> <search value> <target column n> <operation> [<operation> ...]");
+                    return false;
+                }
+                return true;
                 
-                System.out.println("Result of " + aggregateOperation + ": " + result);
+            case "innerjoin":
+                if (parts.length < 5) {
+                    out.println("Usage: innerjoin <table 1> <column n1> <table 2> <column n2>");
+                    return false;
+                }
                 return true;
                 
             default:
-                System.out.println("Unknown command: " + cmd);
                 return true;
         }
     }
     
+    /**
+     * Returns the position of the WHERE keyword at or after from, or -1
+     */
+    private static int whereIndex(String[] parts, int from) {
+        for (int i = from; i < parts.length; i++) {
+            if (parts[i].equalsIgnoreCase("where")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns a read command in the form its results are cached under: the
+     * command name in lower case, single spaces between the arguments and the
+     * WHERE expression, if there is one at whereIndex, in canonical form
+     */
+    private static String normalize(String[] parts, int whereIndex, WhereExpression where) {
+        StringBuilder normalized = new StringBuilder(parts[0].toLowerCase());
+        for (int i = 1; i < whereIndex; i++) {
+            normalized.append(' ').append(parts[i]);
+        }
+        if (where != null) {
+            normalized.append(" where ").append(where);
+        }
+        return normalized.toString();
+    }
+    
+    /**
+     * Parses the WHERE expression that follows the WHERE keyword at the given position
+     */
+    private static WhereExpression parseWhere(String[] parts, int whereIndex) {
+        return WhereExpression.parse(String.join(" ", Arrays.copyOfRange(parts, whereIndex + 1, parts.length)));
+    }
+    
+    private static boolean isInteger(String text) {
+        try {
+            Integer.parseInt(text);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Prints the rows a select or selectrange command finds, planning the
+     * command only if its result isn't cached
+     */
+    private void printPlannedRows(String[] parts) {
+        if (hasPlanArguments(parts)) {
+            Table rowsTable = dbManager.getTable(parts[0].equalsIgnoreCase("select") ? parts[3] : parts[1]);
+            dbManager.getResultCache().select(rowsTable, normalize(parts, parts.length, null),
+                () -> planCommand(parts).cursor(), this::printRows);
+        }
+    }
+    
+    /**
+     * Prints rows page by page in interactive sessions, unless paging was
+     * turned off with page size 0; otherwise streams them in full
+     */
+    private void printRows(RowCursor cursor) {
+        if (interactive && pageSize > 0) {
+            TablePrinter.printTable(cursor, scanner, out, pageSize);
+        } else {
+            TablePrinter.printAll(cursor, out);
+        }
+    }
+    
     /**
      * Prints the help message
      */
     private void printHelp() {
-        System.out.println("Available commands:");
-        System.out.println("open <file name> - Open a database from a file");
-        System.out.println("close - Close the current database");
-        System.out.println("save - Save the database");
-        System.out.println("saveas <file name> - Save the database to a new file");
-        System.out.println("exit - Exit the program");
-        System.out.println("help - Show this help message");
-        System.out.println("import <file name> - Import a table from a file");
-        System.out.println("showtables - Show all tables in the database");
-        System.out.println("describe <name> - Show information about a table");
-        System.out.println("print <name> - Show all rows from a table");
-        System.out.println("export <name> <file name> - Export a table to a file");
-        System.out.println("select <column-n> <value> <table name> - Select rows from a table");
-        System.out.println("addcolumn <table name> <column name> <column type> - Add a new column to a table");
-        System.out.println("update <table name> <search column n> <search value> <target column n> <target value> - Update rows in a table");
-        System.out.println("delete <table name> <search column n> <search value> - Delete rows from a table");
-        System.out.println("insert <table name> <column 1> ... <column n> - Insert a new row into a table");
-        System.out.println("innerjoin <table 1> <column n1> <table 2> <column n2> - Join two tables");
-        System.out.println("rename <old name> <new name> - Rename a table");
-        System.out.println("count <table name> <search column n> <search value> - Count rows in a table");
-        System.out.println("aggregate <table name> <search column n> <search value> <target column n> <operation> - Perform an aggregation");
+        out.println("Available commands:");
+        out.println("open <file name> - Open a database from a file");
+        out.println("close - Close the current database");
+        out.println("save - Save the database");
+        out.println("saveas <file name> - Save the database to a new file");
+        out.println("budget [megabytes] - Show or set the memory budget for loaded tables");
+        out.println("pagesize [rows] - Show or set the rows per page when printing; 0 prints tables in full");
+        out.println("exit - Exit the program");
+        out.println("help - Show this help message");
+        out.println("import <file name> - Import a table from a file");
+        out.println("showtables - Show all tables in the database");
+        out.println("describe <name> - Show information about a table");
+        out.println("print <name> - Show all rows from a table");
+        out.println("export <name> <file name> - Export a table to a file");
+        out.println("convert <name> <file name> - Move a table to a new file (.tbl text or .tblb binary)");
+        out.println("select <column-n> <value> <table name> - Select rows from a table");
+        out.println("select <table name> where <expression> - Select rows matching an expression such as: price >= 10 AND (name = \"pen\" OR NOT 2 IS NULL)");
+        out.println("selectrange <table name> <column n> <low> <high> - Select rows whose value lies between low and high, ordered by it");
+        out.println("orderby <table name> <column n> [asc|desc] [limit] - Show rows ordered by a column, NULLs last");
+        out.println("addcolumn <table name> <column name> <column type> - Add a new column to a table");
+        out.println("createindex <table name> <column n> [sorted] - Create a hash index, or a sorted index for ranges and ordering, on a column");
+        out.println("encode <table name> <column n> - Store a STRING column as codes into a dictionary of its distinct values");
+        out.println("decode <table name> <column n> - Store a dictionary-encoded column as plain strings again");
+        out.println("update <table name> <search column n> <search value> <target column n> <target value> - Update rows in a table");
+        out.println("update <table name> set <target column n> <target value> where <expression> - Update rows matching an expression");
+        out.println("delete <table name> <search column n> <search value> - Delete rows from a table");
+        out.println("delete <table name> where <expression> - Delete rows matching an expression");
+        out.println("insert <table name> <column 1> ... <column n> - Insert a new row into a table");
+        out.println("bulkload <table name> <csv file> - Append all rows of a CSV file to a table");
+        out.println("innerjoin <table 1> <column n1> <table 2> <column n2> - Join two tables");
+        out.println("rename <old name> <new name> - Rename a table");
+        out.println("count <table name> <search column n> <search value> - Count rows in a table");
+        out.println("count <table name> where <expression> - Count rows matching an expression");
+        out.println("aggregate <table name> <search column n> <search value> <target column n> <operation> [<operation> ...] - Perform aggregations (sum, product, maximum, minimum, count, average)");
+        out.println("aggregate <table name> <target column n> <operation> [<operation> ...] where <expression> - Perform aggregations over rows matching an expression");
+        out.println("explain <select|selectrange|count|aggregate|innerjoin> <arguments> - Show how a command would run, with estimated and actual row counts");
+        out.println("cachestats - Show how often select, count and aggregate results came from the result cache and the memory it uses");
+        out.println("groupby <table name> <key column n> <target column n> <operation> [<operation> ...] - Perform aggregations for each value of the key column");
     }
 }
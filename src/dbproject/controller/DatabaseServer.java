@@ -0,0 +1,139 @@
+package dbproject.controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import dbproject.model.DatabaseManager;
+
+/**
+ * Serves the command interface over TCP on the loopback address.
+ * Every connection gets its own CommandProcessor session, running on its own
+ * thread against the shared DatabaseManager, with tables printed in full
+ * instead of page by page. Connections run on virtual threads when the
+ * runtime has them (Java 21 and later) and on pooled platform threads otherwise.
+ */
+public class DatabaseServer implements Closeable {
+    public static final int DEFAULT_PORT = 5555;
+    // How long close waits for sessions to end before interrupting them
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final DatabaseManager dbManager;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    // Open client connections, closed on shutdown so sessions blocked reading them end
+    private final Set<Socket> sockets;
+
+    /**
+     * Binds to the given port on the loopback address; port 0 picks a free port
+     */
+    public DatabaseServer(DatabaseManager dbManager, int port) throws IOException {
+        this.dbManager = dbManager;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.connections = newConnectionExecutor();
+        this.sockets = ConcurrentHashMap.newKeySet();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    break;
+                }
+                throw e;
+            }
+            sockets.add(socket);
+            try {
+                if (serverSocket.isClosed()) {
+                    // close may have run before the socket was added
+                    throw new RejectedExecutionException("Server is closed");
+                }
+                connections.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                sockets.remove(socket);
+                socket.close();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Runs a command session on a connection until the client exits or disconnects
+     */
+    private void handle(Socket socket) {
+        try (Socket connection = socket;
+             Scanner in = new Scanner(connection.getInputStream(), StandardCharsets.UTF_8);
+             PrintStream out = new PrintStream(connection.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            new CommandProcessor(dbManager, in, out, false).run();
+        } catch (IOException e) {
+            // The client went away; its session ends with the connection
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    /**
+     * Stops accepting connections and ends the running sessions. Closing the
+     * client sockets ends sessions waiting for a command, which don't react
+     * to interrupts; sessions still running a command after the timeout are
+     * interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdown();
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // The session ends either way
+            }
+        }
+        try {
+            if (!connections.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                connections.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            connections.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task if the runtime
+     * supports them, otherwise a cached pool of platform threads
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "db-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -1,9 +1,37 @@
 package dbproject.main;
 
+import java.io.IOException;
+
 import dbproject.controller.CommandProcessor;
+import dbproject.controller.DatabaseServer;
+import dbproject.model.DatabaseManager;
 public class DatabaseApp {
-    public static void main(String[] args) {
+    /**
+     * Starts the interactive console, or with "--server [port] [database file]"
+     * serves the commands over TCP to several clients sharing one database.
+     * Numeric scans are vectorized when the JVM is started with
+     * --add-modules jdk.incubator.vector.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args);
+            return;
+        }
         CommandProcessor processor = new CommandProcessor();
         processor.run();
     }
-}
\ No newline at end of file
+
+    private static void runServer(String[] args) throws IOException {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DatabaseServer.DEFAULT_PORT;
+        DatabaseManager dbManager = new DatabaseManager();
+        if (args.length > 2) {
+            dbManager.openDatabase(args[2]);
+        }
+        try (DatabaseServer server = new DatabaseServer(dbManager, port)) {
+            System.out.println("Listening on port " + server.getPort());
+            server.serve();
+        } finally {
+            dbManager.close();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package dbproject.model;
+
+/**
+ * Ways of finding the rows of a table that match a search on one column
+ */
+public enum AccessPath {
+    /** Test the rows one block at a time, skipping blocks the zone maps rule out */
+    SCAN,
+    /** Look the value up in the column's hash index */
+    HASH_INDEX,
+    /** Look the value or range up in the column's sorted index */
+    SORTED_INDEX
+}
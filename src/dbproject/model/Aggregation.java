@@ -0,0 +1,340 @@
+package dbproject.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes every supported aggregate of a numeric column in a single pass
+ * over the matching rows, without collecting them first. Large tables are
+ * split into row ranges that are aggregated on the fork-join pool and then
+ * merged. Blocks the search column's zone map rules out are skipped, and when
+ * only the minimum, maximum and count are asked for, blocks where every row
+ * matches are taken from the target column's zone map without a scan.
+ *
+ * With VectorSupport enabled, vectorizable predicates select the matching
+ * rows of a block into a mask, and VectorScan computes the count, minimum,
+ * maximum and, for INTEGER columns, the sum over it. FLOAT sums and all
+ * products still add the selected rows one at a time in row order, so the
+ * results are the same either way.
+ */
+class Aggregation {
+    static final List<String> OPERATIONS = Arrays.asList("sum", "product", "maximum", "minimum", "count", "average");
+    // Operations a zone map holds everything for
+    private static final List<String> STATISTICS_OPERATIONS = Arrays.asList("maximum", "minimum", "count");
+
+    // Smallest number of rows worth handing to another worker
+    private static final int SPLIT_THRESHOLD = 1 << 16;
+
+    private Aggregation() {
+    }
+
+    /**
+     * Throws if the operation isn't supported
+     */
+    static void checkOperation(String operation) {
+        if (!OPERATIONS.contains(operation.toLowerCase())) {
+            throw new IllegalArgumentException("Unsupported aggregate operation: " + operation);
+        }
+    }
+
+    /**
+     * Aggregates the target column over the rows accepted by the predicate
+     */
+    static Accumulator scan(NumericColumnData target, RowPredicate predicate, int rowCount, List<String> operations) {
+        if (predicate == RowPredicate.NONE) {
+            return new Accumulator();
+        }
+        boolean useStatistics = true;
+        boolean needsSum = false;
+        boolean needsProduct = false;
+        for (String operation : operations) {
+            String name = operation.toLowerCase();
+            useStatistics &= STATISTICS_OPERATIONS.contains(name);
+            needsSum |= name.equals("sum") || name.equals("average");
+            needsProduct |= name.equals("product");
+        }
+        ScanTask task = new ScanTask(target, predicate, null, 0, rowCount, useStatistics, needsSum, needsProduct);
+        return rowCount < 2 * SPLIT_THRESHOLD ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    /**
+     * Aggregates the target column over the given row positions
+     */
+    static Accumulator scan(NumericColumnData target, int[] positions) {
+        ScanTask task = new ScanTask(target, null, positions, 0, positions.length, false, true, true);
+        return positions.length < 2 * SPLIT_THRESHOLD ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    /**
+     * Aggregates a range of rows, or of positions when positions is given,
+     * splitting it in half until the pieces are small enough
+     */
+    private static class ScanTask extends RecursiveTask<Accumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private final NumericColumnData target;
+        private final RowPredicate predicate;
+        private final int[] positions;
+        private final int from;
+        private final int to;
+        private final boolean useStatistics;
+        private final boolean needsSum;
+        private final boolean needsProduct;
+
+        ScanTask(NumericColumnData target, RowPredicate predicate, int[] positions, int from, int to,
+                 boolean useStatistics, boolean needsSum, boolean needsProduct) {
+            this.target = target;
+            this.predicate = predicate;
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+            this.useStatistics = useStatistics;
+            this.needsSum = needsSum;
+            this.needsProduct = needsProduct;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            if (to - from >= 2 * SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                ScanTask left = new ScanTask(target, predicate, positions, from, middle, useStatistics, needsSum,
+                    needsProduct);
+                ScanTask right = new ScanTask(target, predicate, positions, middle, to, useStatistics, needsSum,
+                    needsProduct);
+                left.fork();
+                Accumulator result = right.compute();
+                return left.join().merge(result);
+            }
+
+            Accumulator accumulator = new Accumulator();
+            if (positions != null) {
+                for (int i = from; i < to; i++) {
+                    accumulator.addRow(target, positions[i]);
+                }
+            } else {
+                long[] selection = RowPredicate.newSelection();
+                for (int start = from; start < to; start = ZoneMap.nextBlockStart(start)) {
+                    int block = ZoneMap.blockOf(start);
+                    int end = Math.min(ZoneMap.nextBlockStart(start), to);
+                    if (!predicate.mayMatchBlock(block)) {
+                        continue;
+                    }
+                    if (useStatistics && isWholeBlock(start, end) && predicate.matchesBlock(block)
+                            && accumulator.addBlock(target, block, end - start)) {
+                        continue;
+                    }
+                    if (selection != null && predicate.select(start, end, selection)) {
+                        accumulator.addSelected(target, start, end, selection, needsSum, needsProduct);
+                        continue;
+                    }
+                    for (int row = start; row < end; row++) {
+                        if (predicate.matches(row)) {
+                            accumulator.addRow(target, row);
+                        }
+                    }
+                }
+            }
+            return accumulator;
+        }
+
+        /**
+         * Checks whether a range of rows is a whole block of the target column
+         */
+        private boolean isWholeBlock(int start, int end) {
+            return (start & (ZoneMap.BLOCK_SIZE - 1)) == 0
+                && end - start == Math.min(ZoneMap.BLOCK_SIZE, target.size() - start);
+        }
+    }
+
+    /**
+     * Running state of all aggregates at once
+     */
+    static class Accumulator {
+        private long matchedRows;
+        private long count;
+        private double sum;
+        private double product = 1;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double min = Double.POSITIVE_INFINITY;
+        // Set once rows were counted without adding them to the sum or product,
+        // e.g. a block taken from a zone map
+        private boolean sumMissing;
+        private boolean productMissing;
+
+        private void addRow(NumericColumnData target, int row) {
+            matchedRows++;
+            if (target.isNull(row)) {
+                return;
+            }
+            double value = target.getDouble(row);
+            count++;
+            sum += value;
+            product *= value;
+            if (value > max) {
+                max = value;
+            }
+            if (value < min) {
+                min = value;
+            }
+        }
+
+        /**
+         * Adds a block of rows that all match from the target's zone map. Returns
+         * false, adding nothing, if the statistics could differ from a scan:
+         * zone maps order NaN and signed zeros with Double.compare, while a scan
+         * compares with < and >.
+         */
+        private boolean addBlock(NumericColumnData target, int block, int rows) {
+            ZoneMap zones = target.getZoneMap();
+            int nonNull = rows - zones.getNullCount(block);
+            double blockMin = zones.getMin(block);
+            double blockMax = zones.getMax(block);
+            if (nonNull > 0 && (Double.isNaN(blockMax)
+                    || target.getType() == DataType.FLOAT && (blockMin == 0 || blockMax == 0))) {
+                return false;
+            }
+            matchedRows += rows;
+            count += nonNull;
+            if (nonNull > 0) {
+                if (blockMax > max) {
+                    max = blockMax;
+                }
+                if (blockMin < min) {
+                    min = blockMin;
+                }
+            }
+            sumMissing = true;
+            productMissing = true;
+            return true;
+        }
+
+        /**
+         * Adds the rows a selection mask marks among the rows from start to
+         * end, which lie in one block. The sum and product are only kept up
+         * to date if asked for, or if it costs nothing.
+         */
+        private void addSelected(NumericColumnData target, int start, int end, long[] selection,
+                                 boolean needsSum, boolean needsProduct) {
+            int rows = end - start;
+            int matched = VectorScan.countSelected(selection, rows);
+            if (matched == 0) {
+                return;
+            }
+            matchedRows += matched;
+            target.clearNulls(start, end, selection);
+            int selected = VectorScan.countSelected(selection, rows);
+            if (selected == 0) {
+                return;
+            }
+            count += selected;
+
+            double blockMax;
+            double blockMin;
+            boolean sumAdded = false;
+            // The rows lie in one block, so in one chunk of the target's values
+            int offset = ColumnData.offsetInChunk(start);
+            if (target.getType() == DataType.INTEGER) {
+                int[] values = ((IntColumnData) target).getChunk(start);
+                blockMax = VectorScan.max(values, offset, offset + rows, selection);
+                blockMin = VectorScan.min(values, offset, offset + rows, selection);
+                // Adding row by row is exact while the running sum stays within 2^53, and then so is this
+                if (Math.abs(sum) + (double) selected * Math.max(-blockMin, blockMax) <= 0x1p53) {
+                    sum += VectorScan.sum(values, offset, offset + rows, selection);
+                    sumAdded = true;
+                }
+            } else {
+                double[] values = ((FloatColumnData) target).getChunk(start);
+                blockMax = VectorScan.max(values, offset, offset + rows, selection);
+                blockMin = VectorScan.min(values, offset, offset + rows, selection);
+            }
+            if (blockMax > max) {
+                max = blockMax;
+            }
+            if (blockMin < min) {
+                min = blockMin;
+            }
+
+            boolean addSum = needsSum && !sumAdded;
+            if (addSum || needsProduct) {
+                for (int w = 0, words = (rows + 63) >>> 6; w < words; w++) {
+                    for (long bits = selection[w]; bits != 0; bits &= bits - 1) {
+                        int row = start + (w << 6) + Long.numberOfTrailingZeros(bits);
+                        if (row >= end) {
+                            break;
+                        }
+                        double value = target.getDouble(row);
+                        if (addSum) {
+                            sum += value;
+                        }
+                        if (needsProduct) {
+                            product *= value;
+                        }
+                    }
+                }
+            }
+            sumMissing |= !sumAdded && !needsSum;
+            productMissing |= !needsProduct;
+        }
+
+        /**
+         * Folds another accumulator, covering later rows, into this one
+         */
+        Accumulator merge(Accumulator other) {
+            matchedRows += other.matchedRows;
+            count += other.count;
+            sum += other.sum;
+            product *= other.product;
+            if (other.max > max) {
+                max = other.max;
+            }
+            if (other.min < min) {
+                min = other.min;
+            }
+            sumMissing |= other.sumMissing;
+            productMissing |= other.productMissing;
+            return this;
+        }
+
+        /**
+         * Returns the result of an operation; every result is null when no row matched
+         */
+        Object result(String operation) {
+            String name = operation.toLowerCase();
+            boolean missing = name.equals("product") ? productMissing
+                : (name.equals("sum") || name.equals("average")) && sumMissing;
+            if (missing && matchedRows > 0) {
+                throw new IllegalStateException("Aggregate " + operation + " wasn't computed");
+            }
+            return Aggregation.result(operation, matchedRows, count, sum, product, max, min);
+        }
+    }
+
+    /**
+     * Returns the result of an operation from the running state of an
+     * aggregate; every result is null when no row matched
+     */
+    static Object result(String operation, long matchedRows, long count, double sum, double product,
+                         double max, double min) {
+        if (matchedRows == 0) {
+            return null;
+        }
+        switch (operation.toLowerCase()) {
+            case "sum":
+                return sum;
+            case "product":
+                return product;
+            case "maximum":
+                return max == Double.NEGATIVE_INFINITY ? null : max;
+            case "minimum":
+                return min == Double.POSITIVE_INFINITY ? null : min;
+            case "count":
+                return count;
+            case "average":
+                return count == 0 ? null : sum / count;
+            default:
+                throw new IllegalArgumentException("Unsupported aggregate operation: " + operation);
+        }
+    }
+}
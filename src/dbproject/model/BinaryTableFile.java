@@ -0,0 +1,355 @@
+package dbproject.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Reads and writes tables in the binary .tblb format.
+ *
+ * Layout (big-endian):
+ *   header:  magic "TBLB", int version, int column count, int row count
+ *   columns: per column a length-prefixed UTF-8 name and type name, and an
+ *            int encoding (0 plain, 1 dictionary; version 2 and later)
+ *   blocks:  per column the NULL bitmap (int word count + longs) followed by
+ *            row count ints (INTEGER), doubles (FLOAT) or length-prefixed
+ *            UTF-8 strings with -1 for NULL (STRING); NULL columns have no values.
+ *            Dictionary-encoded STRING columns store an int dictionary size,
+ *            the length-prefixed values and then row count int codes, -1 for NULL.
+ *
+ * Files are read through FileChannel.map, so numeric blocks are bulk-copied
+ * straight from the page cache into the chunks of the columns. Mapped buffers are
+ * big-endian by default, matching DataOutputStream.
+ */
+class BinaryTableFile {
+    static final String EXTENSION = ".tblb";
+
+    private static final int MAGIC = 0x54424C42; // "TBLB"
+    private static final int VERSION = 2;
+    // Oldest version that can still be read; version 1 has no column encodings
+    private static final int MIN_VERSION = 1;
+
+    private static final int PLAIN_ENCODING = 0;
+    private static final int DICTIONARY_ENCODING = 1;
+
+    private BinaryTableFile() {
+    }
+
+    static boolean isBinaryFile(String filePath) {
+        return filePath.toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Saves a table in the binary format
+     */
+    static void save(Table table, String filePath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filePath), 1 << 16))) {
+            int rowCount = table.getRowCount();
+            List<Column> columns = table.getColumns();
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(columns.size());
+            out.writeInt(rowCount);
+            for (int i = 0; i < columns.size(); i++) {
+                writeString(out, columns.get(i).getName());
+                writeString(out, columns.get(i).getType().name());
+                out.writeInt(table.isDictionaryEncoded(i) ? DICTIONARY_ENCODING : PLAIN_ENCODING);
+            }
+
+            for (int i = 0; i < columns.size(); i++) {
+                ColumnData columnData = table.getColumnData(i);
+                long[] words = columnData.getNulls().toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+                writeValues(out, columnData, rowCount);
+            }
+        }
+    }
+
+    private static void writeValues(DataOutputStream out, ColumnData columnData, int rowCount) throws IOException {
+        if (columnData instanceof DictionaryColumnData) {
+            writeCodes(out, (DictionaryColumnData) columnData, rowCount);
+            return;
+        }
+        switch (columnData.getType()) {
+            case INTEGER:
+                IntColumnData ints = (IntColumnData) columnData;
+                for (int row = 0; row < rowCount; row++) {
+                    out.writeInt(ints.getInt(row));
+                }
+                break;
+            case FLOAT:
+                FloatColumnData doubles = (FloatColumnData) columnData;
+                for (int row = 0; row < rowCount; row++) {
+                    out.writeDouble(doubles.getDouble(row));
+                }
+                break;
+            case STRING:
+                StringColumnData strings = (StringColumnData) columnData;
+                for (int row = 0; row < rowCount; row++) {
+                    String value = strings.getString(row);
+                    if (value == null) {
+                        out.writeInt(-1);
+                    } else {
+                        writeString(out, value);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Writes the dictionary and the codes of a dictionary-encoded column,
+     * leaving out values that no row uses any more
+     */
+    private static void writeCodes(DataOutputStream out, DictionaryColumnData columnData, int rowCount) throws IOException {
+        int[] newCodes = new int[columnData.getDictionarySize()];
+        Arrays.fill(newCodes, DictionaryColumnData.NO_CODE);
+        List<String> dictionary = new ArrayList<>();
+        for (int row = 0; row < rowCount; row++) {
+            int code = columnData.getCode(row);
+            if (code != DictionaryColumnData.NO_CODE && newCodes[code] == DictionaryColumnData.NO_CODE) {
+                newCodes[code] = dictionary.size();
+                dictionary.add(columnData.decode(code));
+            }
+        }
+
+        out.writeInt(dictionary.size());
+        for (String value : dictionary) {
+            writeString(out, value);
+        }
+        for (int row = 0; row < rowCount; row++) {
+            int code = columnData.getCode(row);
+            out.writeInt(code == DictionaryColumnData.NO_CODE ? code : newCodes[code]);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Loads a table from the binary format
+     */
+    static Table load(String tableName, String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            MappedReader in = new MappedReader(channel);
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a binary table file: " + filePath);
+            }
+            int version = in.readInt();
+            if (version < MIN_VERSION || version > VERSION) {
+                throw new IOException("Unsupported binary table file version: " + version);
+            }
+            int columnCount = in.readInt();
+            int rowCount = in.readInt();
+
+            List<Column> columns = new ArrayList<>(columnCount);
+            int[] encodings = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                String name = in.readString(in.readInt());
+                DataType type = DataType.valueOf(in.readString(in.readInt()));
+                columns.add(new Column(name, type));
+                encodings[i] = version >= 2 ? in.readInt() : PLAIN_ENCODING;
+            }
+
+            List<ColumnData> data = new ArrayList<>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                long[] words = new long[in.readInt()];
+                in.readLongs(words);
+                BitSet nulls = BitSet.valueOf(words);
+                if (encodings[i] == DICTIONARY_ENCODING) {
+                    data.add(readCodes(in, nulls, rowCount));
+                } else {
+                    data.add(readValues(in, columns.get(i).getType(), nulls, rowCount));
+                }
+            }
+            return new Table(tableName, columns, data, rowCount);
+        }
+    }
+
+    private static ColumnData readValues(MappedReader in, DataType type, BitSet nulls, int rowCount) throws IOException {
+        switch (type) {
+            case INTEGER:
+                return new IntColumnData(readIntChunks(in, rowCount), nulls, rowCount);
+            case FLOAT:
+                return new FloatColumnData(readDoubleChunks(in, rowCount), nulls, rowCount);
+            case STRING:
+                int capacity = ColumnData.loadedCapacity(rowCount);
+                String[][] strings = new String[ColumnData.chunkCount(capacity)][];
+                for (int chunk = 0; chunk < strings.length; chunk++) {
+                    strings[chunk] = new String[ColumnData.chunkLength(capacity, chunk)];
+                    for (int i = 0; i < rowsInChunk(rowCount, chunk); i++) {
+                        int length = in.readInt();
+                        strings[chunk][i] = length < 0 ? null : in.readString(length);
+                    }
+                }
+                return new StringColumnData(strings, nulls, rowCount);
+            default:
+                return new NullColumnData(rowCount);
+        }
+    }
+
+    /**
+     * Reads row count ints straight into the chunks of a column, so the
+     * values are never held twice
+     */
+    private static int[][] readIntChunks(MappedReader in, int rowCount) throws IOException {
+        int capacity = ColumnData.loadedCapacity(rowCount);
+        int[][] chunks = new int[ColumnData.chunkCount(capacity)][];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = new int[ColumnData.chunkLength(capacity, chunk)];
+            in.readInts(chunks[chunk], rowsInChunk(rowCount, chunk));
+        }
+        return chunks;
+    }
+
+    private static double[][] readDoubleChunks(MappedReader in, int rowCount) throws IOException {
+        int capacity = ColumnData.loadedCapacity(rowCount);
+        double[][] chunks = new double[ColumnData.chunkCount(capacity)][];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = new double[ColumnData.chunkLength(capacity, chunk)];
+            in.readDoubles(chunks[chunk], rowsInChunk(rowCount, chunk));
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the number of rows of a column with the given row count that
+     * lie in a chunk
+     */
+    private static int rowsInChunk(int rowCount, int chunk) {
+        return Math.min(ColumnData.CHUNK_SIZE, rowCount - (chunk << ColumnData.CHUNK_SHIFT));
+    }
+
+    private static ColumnData readCodes(MappedReader in, BitSet nulls, int rowCount) throws IOException {
+        int dictionarySize = in.readInt();
+        List<String> dictionary = new ArrayList<>(dictionarySize);
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary.add(in.readString(in.readInt()));
+        }
+        int[][] chunks = readIntChunks(in, rowCount);
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            int rows = rowsInChunk(rowCount, chunk);
+            for (int i = 0; i < rows; i++) {
+                int code = chunks[chunk][i];
+                if (code < DictionaryColumnData.NO_CODE || code >= dictionarySize) {
+                    throw new IOException("Invalid dictionary code in binary table file: " + code);
+                }
+            }
+            // Slots past the last row are NULL slots to come
+            Arrays.fill(chunks[chunk], rows, chunks[chunk].length, DictionaryColumnData.NO_CODE);
+        }
+        return new DictionaryColumnData(chunks, dictionary, nulls, rowCount);
+    }
+
+    /**
+     * Sequential reader over a memory-mapped file. The file is mapped in
+     * windows so files larger than a single mapping (2 GB) can be read.
+     */
+    private static class MappedReader {
+        private static final long WINDOW_SIZE = 1L << 28;
+
+        private final FileChannel channel;
+        private final long fileSize;
+        private MappedByteBuffer buffer;
+        private long windowStart;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            map(0, 0);
+        }
+
+        int readInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        String readString(int length) throws IOException {
+            ensure(length);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads length values into the start of the target
+         */
+        void readInts(int[] target, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                ensure(Integer.BYTES);
+                int count = Math.min(buffer.remaining() / Integer.BYTES, length - offset);
+                buffer.asIntBuffer().get(target, offset, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                offset += count;
+            }
+        }
+
+        void readLongs(long[] target) throws IOException {
+            int offset = 0;
+            while (offset < target.length) {
+                ensure(Long.BYTES);
+                int count = Math.min(buffer.remaining() / Long.BYTES, target.length - offset);
+                buffer.asLongBuffer().get(target, offset, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                offset += count;
+            }
+        }
+
+        /**
+         * Reads length values into the start of the target
+         */
+        void readDoubles(double[] target, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                ensure(Double.BYTES);
+                int count = Math.min(buffer.remaining() / Double.BYTES, length - offset);
+                buffer.asDoubleBuffer().get(target, offset, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+                offset += count;
+            }
+        }
+
+        /**
+         * Makes sure the next bytes are in the current window, remapping at the
+         * current position if they aren't
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            long position = windowStart + buffer.position();
+            if (position + bytes > fileSize) {
+                throw new IOException("Unexpected end of binary table file");
+            }
+            map(position, bytes);
+        }
+
+        private void map(long position, int minimumSize) throws IOException {
+            long size = Math.min(Math.max(WINDOW_SIZE, minimumSize), fileSize - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            windowStart = position;
+        }
+    }
+}
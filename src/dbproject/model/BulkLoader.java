@@ -0,0 +1,165 @@
+package dbproject.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses a CSV file of rows for a table into column arrays, without touching
+ * the table. Lines use the same format as the data lines of a text table file
+ * (strings quoted, NULL for missing values).
+ *
+ * The arrays are sized from the file length and the average length of the
+ * first batch of lines, and lines are parsed a batch at a time with the
+ * column types looked up once per file. Unlike a table load, a line with the
+ * wrong number of values or a bad value fails the whole file, so a bulk load
+ * adds either every row or none. The parsed rows are also written to and
+ * read back from the log records of a bulk load.
+ */
+class BulkLoader {
+    static final int BATCH_SIZE = 8192;
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private BulkLoader() {
+    }
+
+    /**
+     * Parses the rows of a CSV file into fresh columns laid out like the
+     * given table's
+     */
+    static List<ColumnData> parse(String filePath, Table table) throws IOException {
+        int columnCount = table.getColumnCount();
+        DataType[] types = types(table);
+        List<ColumnData> data = createColumns(table);
+        long fileSize = new File(filePath).length();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath), READ_BUFFER_SIZE)) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            Object[][] values = new Object[BATCH_SIZE][columnCount];
+            long lineNumber = 0;
+            boolean sized = false;
+            while (readBatch(reader, batch)) {
+                if (!sized) {
+                    preallocate(data, batch, fileSize);
+                    sized = true;
+                }
+                // Parse the whole batch before storing any of it, so the columns stay in step
+                for (int row = 0; row < batch.size(); row++) {
+                    parseLine(batch.get(row), types, values[row], lineNumber + row + 1);
+                }
+                for (int i = 0; i < columnCount; i++) {
+                    ColumnData columnData = data.get(i);
+                    for (int row = 0; row < batch.size(); row++) {
+                        columnData.append(values[row][i]);
+                    }
+                }
+                lineNumber += batch.size();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Returns the arguments of a bulkrows log record: the load id followed by
+     * the values of the rows from start to end, row by row, written as in
+     * table files
+     */
+    static String[] formatRows(String loadId, List<ColumnData> data, int start, int end) {
+        String[] arguments = new String[1 + (end - start) * data.size()];
+        arguments[0] = loadId;
+        int next = 1;
+        for (int row = start; row < end; row++) {
+            for (ColumnData columnData : data) {
+                arguments[next++] = columnData.format(row);
+            }
+        }
+        return arguments;
+    }
+
+    /**
+     * Parses the rows of bulkrows log records back into fresh columns laid
+     * out like the given table's
+     */
+    static List<ColumnData> parseLogged(List<String[]> records, Table table) {
+        int columnCount = table.getColumnCount();
+        DataType[] types = types(table);
+        List<ColumnData> data = createColumns(table);
+        for (String[] record : records) {
+            // The operation and the load id come before the values
+            if (columnCount == 0 || (record.length - 2) % columnCount != 0) {
+                throw new IllegalArgumentException("Logged rows don't match the columns of table " + table.getName());
+            }
+            for (int start = 2; start < record.length; start += columnCount) {
+                for (int i = 0; i < columnCount; i++) {
+                    data.get(i).append(Cell.parseCell(record[start + i], types[i]).getValue());
+                }
+            }
+        }
+        return data;
+    }
+
+    private static DataType[] types(Table table) {
+        List<Column> columns = table.getColumns();
+        DataType[] types = new DataType[columns.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = columns.get(i).getType();
+        }
+        return types;
+    }
+
+    private static List<ColumnData> createColumns(Table table) {
+        List<ColumnData> data = new ArrayList<>(table.getColumnCount());
+        for (int i = 0; i < table.getColumnCount(); i++) {
+            data.add(ColumnData.create(table.getColumns().get(i).getType(), table.isDictionaryEncoded(i)));
+        }
+        return data;
+    }
+
+    /**
+     * Reads up to BATCH_SIZE non-empty lines; returns false at the end of the file
+     */
+    private static boolean readBatch(BufferedReader reader, List<String> batch) throws IOException {
+        batch.clear();
+        String line;
+        while (batch.size() < BATCH_SIZE && (line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                batch.add(line);
+            }
+        }
+        return !batch.isEmpty();
+    }
+
+    /**
+     * Sizes the columns for the number of rows the file is expected to hold
+     */
+    private static void preallocate(List<ColumnData> data, List<String> firstBatch, long fileSize) {
+        long sampleBytes = 0;
+        for (String line : firstBatch) {
+            sampleBytes += line.length() + 1;
+        }
+        long estimatedRows = fileSize * firstBatch.size() / Math.max(sampleBytes, 1);
+        int capacity = (int) Math.min(estimatedRows + estimatedRows / 16, Integer.MAX_VALUE - 8);
+        for (ColumnData columnData : data) {
+            columnData.ensureCapacity(capacity);
+        }
+    }
+
+    private static void parseLine(String line, DataType[] types, Object[] values, long lineNumber) {
+        List<String> cellValues = FileHandler.parseCsvLine(line);
+        if (cellValues.size() != types.length) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": expected " + types.length
+                + " values but found " + cellValues.size());
+        }
+        try {
+            for (int i = 0; i < types.length; i++) {
+                values[i] = Cell.parseCell(cellValues.get(i), types[i]).getValue();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package dbproject.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Columnar storage for the values of a single table column.
+ * Values are kept in primitive or plain arrays by the subclasses and
+ * NULLs are tracked in a bitmap, so no Cell objects are kept per row.
+ *
+ * Values are stored in chunks of CHUNK_SIZE rows, one per zone map block.
+ * Only a column that fits in one chunk has a smaller chunk, which grows the
+ * way ArrayList does. A snapshot copies the list of chunks and shares the
+ * chunks themselves with the column it was taken from. Appends only write
+ * past the end of every snapshot, so they leave the chunks shared; changing
+ * an existing row copies just the chunk holding it, the first time that
+ * chunk changes after a snapshot was taken (copy-on-write).
+ */
+abstract class ColumnData {
+    static final int CHUNK_SHIFT = ZoneMap.BLOCK_SHIFT;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int DEFAULT_CAPACITY = 16;
+    // Marks the chunks of a snapshot, which it never owns
+    private static final long SHARED = -1;
+
+    protected final BitSet nulls;
+    protected int size;
+    // Number of value slots in the chunks
+    private int capacity;
+    // Counts the snapshots taken; atomic because readers take them concurrently
+    private final AtomicLong snapshotsTaken;
+    // Snapshot count when each chunk was created or last copied; a chunk can
+    // only be changed in place if no snapshot was taken since
+    private long[] chunkCopiedAt;
+
+    protected ColumnData() {
+        this.nulls = new BitSet();
+        this.snapshotsTaken = new AtomicLong();
+        this.chunkCopiedAt = new long[0];
+    }
+
+    /**
+     * Wraps values that were already loaded, e.g. from a binary table file,
+     * which the subclass takes over as chunks laid out for
+     * loadedCapacity(size) slots
+     */
+    protected ColumnData(BitSet nulls, int size) {
+        this.nulls = nulls;
+        this.size = size;
+        this.capacity = loadedCapacity(size);
+        this.snapshotsTaken = new AtomicLong();
+        this.chunkCopiedAt = new long[chunkCount(capacity)];
+    }
+
+    /**
+     * Creates a snapshot over the chunks of another column
+     */
+    protected ColumnData(ColumnData source, BitSet nulls, int size) {
+        this.nulls = nulls;
+        this.size = size;
+        this.capacity = source.capacity;
+        this.snapshotsTaken = new AtomicLong();
+        this.chunkCopiedAt = new long[source.chunkCopiedAt.length];
+        Arrays.fill(chunkCopiedAt, SHARED);
+    }
+
+    /**
+     * Returns the number of slots a column loaded with the given number of
+     * rows has: just enough below one chunk, whole chunks above
+     */
+    static int loadedCapacity(int size) {
+        return size <= CHUNK_SIZE ? size : (size + CHUNK_MASK) & ~CHUNK_MASK;
+    }
+
+    static int chunkCount(int capacity) {
+        return (capacity + CHUNK_MASK) >>> CHUNK_SHIFT;
+    }
+
+    /**
+     * Returns the number of slots in a chunk of a column with the given capacity
+     */
+    static int chunkLength(int capacity, int chunk) {
+        return Math.min(CHUNK_SIZE, capacity - (chunk << CHUNK_SHIFT));
+    }
+
+    /**
+     * Returns the position of a row in its chunk
+     */
+    static int offsetInChunk(int row) {
+        return row & CHUNK_MASK;
+    }
+
+    /**
+     * Creates an empty column store for the given type
+     */
+    static ColumnData create(DataType type) {
+        switch (type) {
+            case INTEGER:
+                return new IntColumnData();
+            case FLOAT:
+                return new FloatColumnData();
+            case STRING:
+                return new StringColumnData();
+            default:
+                return new NullColumnData();
+        }
+    }
+
+    /**
+     * Creates an empty column store for the given type, dictionary-encoded
+     * if requested and the type is STRING
+     */
+    static ColumnData create(DataType type, boolean dictionaryEncoded) {
+        if (dictionaryEncoded && type == DataType.STRING) {
+            return new DictionaryColumnData();
+        }
+        return create(type);
+    }
+
+    abstract DataType getType();
+
+    /**
+     * Returns a copy of the NULL bitmap
+     */
+    BitSet getNulls() {
+        // BitSet.clone may trim the source, which isn't safe with concurrent readers
+        return BitSet.valueOf(nulls.toLongArray());
+    }
+
+    /**
+     * Returns a read-only view of the current rows that shares this column's
+     * chunks. Callers hold the table lock.
+     */
+    ColumnData snapshot() {
+        snapshotsTaken.incrementAndGet();
+        return share(getNulls(), size);
+    }
+
+    /**
+     * Gives this column its own copy of a chunk if a snapshot may share it
+     */
+    private void ownChunk(int chunk) {
+        long taken = snapshotsTaken.get();
+        if (chunkCopiedAt[chunk] != taken) {
+            copyChunk(chunk);
+            chunkCopiedAt[chunk] = taken;
+        }
+    }
+
+    /**
+     * Makes room for at least the given number of values
+     */
+    protected void ensureCapacity(int minCapacity) {
+        if (minCapacity <= capacity) {
+            return;
+        }
+        if (minCapacity <= CHUNK_SIZE) {
+            allocateChunk(0, Math.min(grow(capacity, minCapacity), CHUNK_SIZE));
+            return;
+        }
+        if (capacity < CHUNK_SIZE && chunkCopiedAt.length == 1) {
+            allocateChunk(0, CHUNK_SIZE);
+        }
+        while (capacity < minCapacity) {
+            allocateChunk(chunkCopiedAt.length, CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Adds a chunk of the given length, or grows the only one; either way
+     * the new storage belongs to this column
+     */
+    private void allocateChunk(int chunk, int length) {
+        resizeChunk(chunk, length);
+        if (chunk == chunkCopiedAt.length) {
+            chunkCopiedAt = Arrays.copyOf(chunkCopiedAt, chunk + 1);
+        }
+        chunkCopiedAt[chunk] = snapshotsTaken.get();
+        capacity = (chunk << CHUNK_SHIFT) + length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    /**
+     * Returns the number of NULL rows
+     */
+    int countNulls() {
+        return nulls.cardinality();
+    }
+
+    /**
+     * Clears the bits of the NULL rows in a selection of the rows from start
+     * to end, where bit i stands for row start + i
+     */
+    void clearNulls(int start, int end, long[] selection) {
+        for (int row = nulls.nextSetBit(start); row >= 0 && row < end; row = nulls.nextSetBit(row + 1)) {
+            selection[(row - start) >>> 6] &= ~(1L << (row - start));
+        }
+    }
+
+    /**
+     * Returns the value at a row, or null if the value is NULL
+     */
+    Object getValue(int row) {
+        return nulls.get(row) ? null : getNonNullValue(row);
+    }
+
+    /**
+     * Materializes the value at a row as a Cell
+     */
+    Cell getCell(int row) {
+        Object value = getValue(row);
+        return value == null ? new Cell(null, DataType.NULL) : new Cell(value, getType());
+    }
+
+    /**
+     * Formats the value at a row the same way Cell.toString does
+     */
+    String format(int row) {
+        return nulls.get(row) ? "NULL" : formatNonNull(row);
+    }
+
+    /**
+     * Appends a value; null stands for NULL
+     */
+    void append(Object value) {
+        checkValue(value);
+        ensureCapacity(size + 1);
+        store(size, value);
+        nulls.set(size, value == null);
+        size++;
+    }
+
+    /**
+     * Appends the given number of NULL values
+     */
+    void appendNulls(int count) {
+        ensureCapacity(size + count);
+        nulls.set(size, size + count);
+        size += count;
+    }
+
+    /**
+     * Appends the value at a row of another column of the same type, which
+     * may use a different storage for it
+     */
+    void appendFrom(ColumnData source, int row) {
+        ensureCapacity(size + 1);
+        if (source.isNull(row)) {
+            store(size, null);
+            nulls.set(size);
+        } else {
+            copyValue(source, row, size);
+        }
+        size++;
+    }
+
+    /**
+     * Appends all values of another column of the same type, which may use a
+     * different storage for it
+     */
+    void appendAll(ColumnData source) {
+        ensureCapacity(size + source.size);
+        copyRange(source, 0, size, source.size);
+        for (int row = source.nulls.nextSetBit(0); row >= 0 && row < source.size; row = source.nulls.nextSetBit(row + 1)) {
+            nulls.set(size + row);
+        }
+        size += source.size;
+    }
+
+    /**
+     * Replaces the value at a row; null stands for NULL
+     */
+    void set(int row, Object value) {
+        checkValue(value);
+        ownChunk(row >>> CHUNK_SHIFT);
+        store(row, value);
+        nulls.set(row, value == null);
+    }
+
+    /**
+     * Removes the rows marked in the given mask, keeping the order of the remaining rows
+     */
+    void removeRows(BitSet removed) {
+        int first = removed.nextSetBit(0);
+        if (first < 0 || first >= size) {
+            return;
+        }
+        // Every row from the first removed one on moves down
+        for (int chunk = first >>> CHUNK_SHIFT; chunk <= (size - 1) >>> CHUNK_SHIFT; chunk++) {
+            ownChunk(chunk);
+        }
+        int target = first;
+        for (int row = first; row < size; row++) {
+            if (removed.get(row)) {
+                continue;
+            }
+            if (target != row) {
+                move(row, target);
+                nulls.set(target, nulls.get(row));
+            }
+            target++;
+        }
+        clear(target, size);
+        nulls.clear(target, size);
+        size = target;
+    }
+
+    /**
+     * Estimates the heap used by this column in bytes
+     */
+    long estimateBytes() {
+        return estimateValueBytes() + nulls.size() / 8;
+    }
+
+    /**
+     * Returns the number of value slots in the chunks
+     */
+    protected int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Grows the backing array using the same policy as ArrayList
+     */
+    protected static int grow(int currentCapacity, int minCapacity) {
+        int newCapacity = currentCapacity + (currentCapacity >> 1);
+        return Math.max(newCapacity, Math.max(minCapacity, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Throws if the value can't be stored in this column
+     */
+    protected abstract void checkValue(Object value);
+
+    protected abstract Object getNonNullValue(int row);
+
+    protected abstract String formatNonNull(int row);
+
+    /**
+     * Stores a value that already passed checkValue; null clears the slot
+     */
+    protected abstract void store(int row, Object value);
+
+    /**
+     * Copies a non-NULL value from a column of the same type into a slot of this one
+     */
+    protected abstract void copyValue(ColumnData source, int from, int to);
+
+    /**
+     * Copies a range of slots from a column of the same type into this one
+     */
+    protected abstract void copyRange(ColumnData source, int from, int to, int count);
+
+    protected abstract void move(int from, int to);
+
+    /**
+     * Resets the slots in the given range so they don't hold on to old values
+     */
+    protected abstract void clear(int from, int to);
+
+    /**
+     * Adds a chunk with the given number of slots at the end, or copies an
+     * existing chunk into a larger one
+     */
+    protected abstract void resizeChunk(int chunk, int length);
+
+    /**
+     * Creates a column of the same kind over this column's chunks
+     */
+    protected abstract ColumnData share(BitSet nulls, int size);
+
+    /**
+     * Replaces a chunk with a private copy
+     */
+    protected abstract void copyChunk(int chunk);
+
+    protected abstract long estimateValueBytes();
+}
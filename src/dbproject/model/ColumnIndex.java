@@ -0,0 +1,26 @@
+package dbproject.model;
+
+/**
+ * Secondary index on one column, kept up to date by Table on every change
+ */
+interface ColumnIndex {
+    /**
+     * Indexes every row of the column from scratch
+     */
+    void rebuild(ColumnData column, int rowCount);
+
+    void add(Object value, int row);
+
+    void remove(Object value, int row);
+
+    /**
+     * Updates the positions after rows were deleted: the row at position
+     * firstRow + i moved to newPositions[i], or was deleted if that is -1
+     */
+    void removeRows(int firstRow, int[] newPositions);
+
+    /**
+     * Estimates the heap used by the index in bytes
+     */
+    long estimateBytes(int rowCount);
+}
@@ -0,0 +1,246 @@
+package dbproject.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Statistics of one column for estimating how many rows a search matches.
+ * The NULL fraction is exact; everything else comes from a random sample of
+ * up to SAMPLE_SIZE rows: an estimate of the number of distinct values, the
+ * most common values with their frequencies, and an equi-depth histogram
+ * whose buckets each hold the same share of the non-NULL values.
+ */
+class ColumnStatistics {
+    static final int SAMPLE_SIZE = 30000;
+
+    private static final int MOST_COMMON_VALUES = 16;
+    private static final int HISTOGRAM_BUCKETS = 32;
+
+    private final int rowCount;
+    private final double nullFraction;
+    private final double distinct;
+    private final Map<Object, Double> mostCommon;
+    private final double mostCommonFraction;
+    // Bucket i holds the values from bounds[i] to bounds[i + 1]; empty without non-NULL values
+    private final Object[] bounds;
+    private final boolean numeric;
+
+    private ColumnStatistics(int rowCount, double nullFraction, double distinct, Map<Object, Double> mostCommon,
+                             Object[] bounds, boolean numeric) {
+        this.rowCount = rowCount;
+        this.nullFraction = nullFraction;
+        this.distinct = distinct;
+        this.mostCommon = mostCommon;
+        this.bounds = bounds;
+        this.numeric = numeric;
+        double fraction = 0;
+        for (double value : mostCommon.values()) {
+            fraction += value;
+        }
+        this.mostCommonFraction = fraction;
+    }
+
+    /**
+     * Gathers the statistics of the first rowCount rows of a column, which
+     * must not change meanwhile
+     */
+    static ColumnStatistics gather(ColumnData column, int rowCount) {
+        int nonNullRows = rowCount - column.countNulls();
+        double nullFraction = rowCount == 0 ? 0 : (double) (rowCount - nonNullRows) / rowCount;
+
+        // Small columns are read whole, so their statistics are exact; larger
+        // ones are sampled without replacement, in row order
+        boolean complete = rowCount <= SAMPLE_SIZE;
+        List<Object> sample = new ArrayList<>(Math.min(rowCount, SAMPLE_SIZE));
+        // A fixed seed makes repeated gathering over the same rows agree
+        SplittableRandom random = new SplittableRandom(rowCount);
+        int needed = Math.min(rowCount, SAMPLE_SIZE);
+        for (int row = 0; row < rowCount && needed > 0; row++) {
+            if (complete || random.nextInt(rowCount - row) < needed) {
+                addSample(sample, column.getValue(row));
+                needed--;
+            }
+        }
+
+        Map<Object, Integer> counts = new HashMap<>();
+        for (Object value : sample) {
+            counts.merge(value, 1, Integer::sum);
+        }
+        int sampled = sample.size();
+        double distinct = estimateDistinct(counts, sampled, nonNullRows, complete);
+        if (column instanceof DictionaryColumnData) {
+            // The dictionary holds every value the column ever had
+            distinct = Math.min(distinct, ((DictionaryColumnData) column).getDictionarySize());
+        }
+
+        Map<Object, Double> mostCommon = new HashMap<>();
+        if (sampled > 0) {
+            List<Map.Entry<Object, Integer>> entries = new ArrayList<>(counts.entrySet());
+            entries.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+            // Only values clearly more frequent than the average one are worth keeping
+            double threshold = 1.25 * sampled / counts.size();
+            for (Map.Entry<Object, Integer> entry : entries) {
+                if (mostCommon.size() == MOST_COMMON_VALUES || entry.getValue() < 2 || entry.getValue() <= threshold) {
+                    break;
+                }
+                mostCommon.put(entry.getKey(), (1 - nullFraction) * entry.getValue() / sampled);
+            }
+        }
+
+        Object[] values = sample.toArray();
+        Arrays.sort(values, Table::compareValues);
+        int buckets = Math.min(HISTOGRAM_BUCKETS, values.length);
+        Object[] bounds = new Object[buckets == 0 ? 0 : buckets + 1];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = values[(int) ((long) i * (values.length - 1) / buckets)];
+        }
+        DataType type = column.getType();
+        return new ColumnStatistics(rowCount, nullFraction, distinct, mostCommon, bounds,
+            type == DataType.INTEGER || type == DataType.FLOAT);
+    }
+
+    private static void addSample(List<Object> sample, Object value) {
+        if (value != null) {
+            sample.add(value);
+        }
+    }
+
+    /**
+     * Scales the distinct values seen in the sample up to the whole column
+     * with the Haas-Stokes estimator, which treats values seen more than once
+     * as all the column has of them and values seen once as standing for the
+     * values the sample missed
+     */
+    private static double estimateDistinct(Map<Object, Integer> counts, int sampled, int nonNullRows,
+                                           boolean complete) {
+        if (complete || sampled == 0) {
+            return counts.size();
+        }
+        int seenOnce = 0;
+        for (int count : counts.values()) {
+            if (count == 1) {
+                seenOnce++;
+            }
+        }
+        double estimate = (double) sampled * counts.size()
+            / (sampled - seenOnce + (double) seenOnce * sampled / nonNullRows);
+        return Math.max(counts.size(), Math.min(estimate, nonNullRows));
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    double getNullFraction() {
+        return nullFraction;
+    }
+
+    double getDistinct() {
+        return distinct;
+    }
+
+    /**
+     * Estimates the fraction of rows equal to a value; null stands for NULL
+     */
+    double equalsFraction(Object value) {
+        if (value == null) {
+            return nullFraction;
+        }
+        Double fraction = mostCommon.get(value);
+        if (fraction != null) {
+            return fraction;
+        }
+        if (bounds.length == 0 || Table.compareValues(value, bounds[0]) < 0
+                || Table.compareValues(value, bounds[bounds.length - 1]) > 0) {
+            // Outside the sampled range: at most a rare value the sample missed
+            return rowCount == 0 ? 0 : Math.min(1.0 / rowCount, remainingFraction());
+        }
+        return remainingFraction() / Math.max(distinct - mostCommon.size(), 1);
+    }
+
+    /**
+     * Estimates the fraction of the pairs of a row of this column and a row of
+     * another column of the same type that hold equal values. The most common
+     * values of either side are matched by their own frequencies; the other
+     * values are assumed to all occur on the side with fewer of them.
+     */
+    double joinFraction(ColumnStatistics other) {
+        double matched = 0;
+        for (Map.Entry<Object, Double> entry : mostCommon.entrySet()) {
+            matched += entry.getValue() * other.equalsFraction(entry.getKey());
+        }
+        for (Map.Entry<Object, Double> entry : other.mostCommon.entrySet()) {
+            if (!mostCommon.containsKey(entry.getKey())) {
+                matched += entry.getValue() * equalsFraction(entry.getKey());
+            }
+        }
+        double restDistinct = Math.max(distinct - mostCommon.size(), other.distinct - other.mostCommon.size());
+        return matched + remainingFraction() * other.remainingFraction() / Math.max(restDistinct, 1);
+    }
+
+    /**
+     * Estimates the fraction of rows whose value lies between two non-NULL
+     * bounds, both included
+     */
+    double rangeFraction(Object low, Object high) {
+        if (bounds.length == 0 || Table.compareValues(low, high) > 0) {
+            return 0;
+        }
+        int buckets = bounds.length - 1;
+        double covered = 0;
+        for (int i = 0; i < buckets; i++) {
+            Object bucketLow = bounds[i];
+            Object bucketHigh = bounds[i + 1];
+            if (Table.compareValues(high, bucketLow) < 0 || Table.compareValues(low, bucketHigh) > 0) {
+                continue;
+            }
+            if (Table.compareValues(low, bucketLow) <= 0 && Table.compareValues(high, bucketHigh) >= 0) {
+                covered++;
+            } else {
+                covered += overlap(bucketLow, bucketHigh, low, high);
+            }
+        }
+        return Math.min(1, covered / buckets) * (1 - nullFraction);
+    }
+
+    /**
+     * Estimates the share of a bucket a range partly overlapping it covers,
+     * assuming numbers are spread evenly within a bucket
+     */
+    private double overlap(Object bucketLow, Object bucketHigh, Object low, Object high) {
+        if (!numeric) {
+            return 0.5;
+        }
+        double from = Math.max(((Number) low).doubleValue(), ((Number) bucketLow).doubleValue());
+        double to = Math.min(((Number) high).doubleValue(), ((Number) bucketHigh).doubleValue());
+        double width = ((Number) bucketHigh).doubleValue() - ((Number) bucketLow).doubleValue();
+        if (!(width > 0) || Double.isInfinite(width) || Double.isNaN(to - from)) {
+            return 0.5;
+        }
+        return Math.max(0, Math.min(1, (to - from) / width));
+    }
+
+    private double remainingFraction() {
+        return Math.max(0, 1 - nullFraction - mostCommonFraction);
+    }
+
+    /**
+     * Describes the statistics in one line
+     */
+    String describe() {
+        StringBuilder description = new StringBuilder();
+        description.append(Math.round(distinct)).append(" distinct values, ")
+            .append(String.format("%.1f%%", nullFraction * 100)).append(" NULL");
+        if (bounds.length > 0) {
+            description.append(", values from ").append(bounds[0]).append(" to ").append(bounds[bounds.length - 1]);
+        }
+        if (!mostCommon.isEmpty()) {
+            description.append(", ").append(mostCommon.size()).append(" common values");
+        }
+        return description.toString();
+    }
+}
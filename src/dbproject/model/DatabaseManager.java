@@ -2,61 +2,427 @@ package dbproject.model;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 /**
- * Manages database operations
+ * Manages database operations.
+ * Tables are loaded from their files on first use. When the loaded tables
+ * exceed the memory budget, the least recently used tables that haven't been
+ * modified since they were loaded or saved are dropped and reloaded on demand.
+ * Changes are recorded in a write-ahead log next to the catalog, which is
+ * replayed when the database is opened and emptied on every save. Saves are
+ * logged too, so opening the database after a crash in the middle of a save
+ * either finishes or undoes it before the changes are replayed.
+ *
+ * The manager can be shared between threads. The catalog maps are concurrent
+ * and every table has its own read/write lock, so reads of any tables run in
+ * parallel and a change only blocks the table it touches. Opening, closing,
+ * saving, importing and renaming take the database lock exclusively;
+ * everything else holds it shared.
  */
 public class DatabaseManager {
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final String LOG_EXTENSION = ".wal";
+    
     private Map<String, Table> tables;
     private Map<String, String> tableFiles;
+    // Indexes of each table, kept in the catalog and built whenever the table is loaded
+    private Map<String, Set<IndexDefinition>> indexes;
     private String databaseFile;
     
+    // State of each loaded table at its last load or save, used to find modified tables
+    private Map<String, SaveState> saveStates;
+    private Map<String, Long> tableSizes;
+    private volatile long memoryBudget;
+    private volatile boolean catalogModified;
+    
+    // Last use of each loaded table, from a shared counter, for evicting the least recently used
+    private Map<String, Long> lastUsed;
+    private final AtomicLong useCounter;
+    
+    private WriteAheadLog log;
+    private boolean replaying;
+    
+    private final ReentrantReadWriteLock databaseLock;
+    // Serializes loading and evicting tables
+    private final ReentrantLock loadLock;
+    
+    private final QueryPlanner planner;
+    private final ResultCache resultCache;
+    
     public DatabaseManager() {
-        this.tables = new HashMap<>();
-        this.tableFiles = new HashMap<>();
+        this.tables = new ConcurrentHashMap<>();
+        this.tableFiles = new ConcurrentHashMap<>();
+        this.indexes = new ConcurrentHashMap<>();
+        this.saveStates = new ConcurrentHashMap<>();
+        this.tableSizes = new ConcurrentHashMap<>();
+        this.lastUsed = new ConcurrentHashMap<>();
+        this.useCounter = new AtomicLong();
+        this.databaseLock = new ReentrantReadWriteLock();
+        this.loadLock = new ReentrantLock();
+        this.planner = new QueryPlanner();
+        this.resultCache = new ResultCache();
+        this.memoryBudget = Long.getLong("dbproject.memoryBudgetMb", Runtime.getRuntime().maxMemory() / 2 / MEGABYTE) * MEGABYTE;
     }
     
     /**
-     * Opens a database from a file
+     * Opens a database from a file; tables are loaded when first used.
+     * Changes logged since the last save are applied again. If they can't
+     * all be applied, no database is left open and the log is kept as it is.
      */
     public void openDatabase(String filePath) throws IOException {
-        // Clear current data
+        databaseLock.writeLock().lock();
+        try {
+            closeLog();
+            clearDatabase();
+            
+            try {
+                this.databaseFile = filePath;
+                log = WriteAheadLog.open(filePath + LOG_EXTENSION);
+                List<String[]> changes = recoverSaves(log.readRecords());
+                
+                // Load the catalog from file
+                tableFiles.putAll(FileHandler.loadDatabaseCatalog(filePath, indexes));
+                catalogModified = false;
+                replayLog(changes);
+            } catch (IOException | RuntimeException e) {
+                closeLog();
+                clearDatabase();
+                throw e;
+            }
+        } finally {
+            databaseLock.writeLock().unlock();
+        }
+    }
+    
+    private void clearDatabase() {
         tables.clear();
+        resultCache.clear();
         tableFiles.clear();
+        indexes.clear();
+        saveStates.clear();
+        tableSizes.clear();
+        lastUsed.clear();
+        databaseFile = null;
+        catalogModified = false;
+    }
+    
+    /**
+     * Closes the database without saving; logged changes are kept for the next open
+     */
+    public void close() throws IOException {
+        databaseLock.writeLock().lock();
+        try {
+            closeLog();
+        } finally {
+            databaseLock.writeLock().unlock();
+        }
+    }
+    
+    private void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+    
+    /**
+     * Finishes the last committed save in the log and undoes any save started
+     * after it, so the files are as that save left them, and returns the
+     * changes logged since
+     */
+    private static List<String[]> recoverSaves(List<String[]> records) throws IOException {
+        int lastCommit = -1;
+        for (int i = 0; i < records.size(); i++) {
+            if (records.get(i)[0].equals("savecommit")) {
+                lastCommit = i;
+            }
+        }
+        for (int i = lastCommit - 1; i >= 0; i--) {
+            if (records.get(i)[0].equals("savebegin")) {
+                finishSave(Arrays.copyOfRange(records.get(i), 1, records.get(i).length));
+                break;
+            }
+        }
         
-        // Load database from file
-        this.databaseFile = filePath;
-        tableFiles = FileHandler.loadDatabaseCatalog(filePath);
-        
-        // Load all tables
-        for (Map.Entry<String, String> entry : tableFiles.entrySet()) {
-            String tableName = entry.getKey();
-            String tableFile = entry.getValue();
-            Table table = FileHandler.loadTable(tableName, tableFile);
-            tables.put(tableName, table);
+        List<String[]> changes = new ArrayList<>();
+        List<String[]> unfinished = new ArrayList<>();
+        for (String[] record : records.subList(lastCommit + 1, records.size())) {
+            if (record[0].equals("savebegin")) {
+                // Undone latest first, so appended files end up at their oldest length
+                unfinished.add(0, record);
+            } else {
+                changes.add(record);
+            }
+        }
+        for (String[] record : unfinished) {
+            undoSave(Arrays.copyOfRange(record, 1, record.length));
+        }
+        return changes;
+    }
+    
+    /**
+     * Applies the logged changes on top of the table files
+     */
+    private void replayLog(List<String[]> changes) throws IOException {
+        replaying = true;
+        try {
+            // Only changes that succeeded are logged, so a change that fails
+            // now would leave the database different from what was acknowledged
+            Map<String, List<String[]>> bulkRows = new HashMap<>();
+            for (int i = 0; i < changes.size(); i++) {
+                String[] record = changes.get(i);
+                try {
+                    applyLogRecord(record, bulkRows);
+                } catch (IOException | RuntimeException e) {
+                    throw new IOException("Failed to apply logged change " + (i + 1) + " of " + changes.size()
+                        + " (" + String.join(" ", record) + ") from " + databaseFile + LOG_EXTENSION
+                        + ": " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            replaying = false;
+        }
+    }
+    
+    /**
+     * Applies one logged change; the rows of bulk loads are collected in
+     * bulkRows by load id until the load's commit record
+     */
+    private void applyLogRecord(String[] record, Map<String, List<String[]>> bulkRows) throws IOException {
+        switch (record[0]) {
+            case "insert":
+                insertRow(record[1], Arrays.copyOfRange(record, 2, record.length));
+                break;
+            case "update":
+                updateRows(record[1], Integer.parseInt(record[2]), record[3], Integer.parseInt(record[4]), record[5]);
+                break;
+            case "updatewhere":
+                updateRows(record[1], WhereExpression.parse(record[2]), Integer.parseInt(record[3]), record[4]);
+                break;
+            case "delete":
+                deleteRows(record[1], Integer.parseInt(record[2]), record[3]);
+                break;
+            case "deletewhere":
+                deleteRows(record[1], WhereExpression.parse(record[2]));
+                break;
+            case "addcolumn":
+                addColumn(record[1], record[2], DataType.valueOf(record[3]));
+                break;
+            case "encode":
+                setDictionaryEncoded(record[1], Integer.parseInt(record[2]), Boolean.parseBoolean(record[3]));
+                break;
+            case "createindex":
+                createIndex(record[1], Integer.parseInt(record[2]), Boolean.parseBoolean(record[3]));
+                break;
+            case "rename":
+                renameTable(record[1], record[2]);
+                break;
+            case "bulkrows":
+                bulkRows.computeIfAbsent(record[1], id -> new ArrayList<>()).add(record);
+                break;
+            case "bulkcommit":
+                List<String[]> loadedRows = bulkRows.remove(record[2]);
+                if (loadedRows == null) {
+                    throw new IllegalArgumentException("No logged rows for bulk load " + record[2]);
+                }
+                appendRows(record[1], BulkLoader.parseLogged(loadedRows, getTable(record[1])), null);
+                break;
+            case "bulkload":
+                // Only in logs from before bulk loads logged their rows
+                bulkLoad(record[1], record[2]);
+                break;
+            case "innerjoin":
+                innerJoin(record[1], Integer.parseInt(record[2]), record[3], Integer.parseInt(record[4]));
+                break;
+            case "import":
+                // Only in logs from before imports were saved instead of logged
+                importTable(record[1]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown log record: " + record[0]);
+        }
+    }
+    
+    /**
+     * Writes a change to the log and waits until it is durable
+     */
+    private void logChange(String operation, String... arguments) throws IOException {
+        syncLog(appendLog(operation, arguments));
+    }
+    
+    /**
+     * Queues a change in the log and returns its sequence number, or 0 if
+     * nothing was queued. Called while holding the lock of the changed table,
+     * so the records of a table are in the order its changes were made.
+     */
+    private long appendLog(String operation, String... arguments) {
+        return log != null && !replaying ? log.append(operation, arguments) : 0;
+    }
+    
+    /**
+     * Waits until a queued change is durable. Called after releasing the table
+     * lock, so concurrent writers share one fsync.
+     */
+    private void syncLog(long sequence) throws IOException {
+        if (sequence > 0) {
+            log.sync(sequence);
         }
     }
     
     /**
-     * Saves the database to the current file
+     * Saves the database to the current file. Only modified tables are written;
+     * tables that only had rows inserted get the new rows appended to their file.
+     *
+     * Other files are written to temporary files. A savebegin record lists
+     * every file with its length before the append or its temporary file, and
+     * a savecommit record follows once all of them are on disk. Only then are
+     * the temporary files moved into place and the log emptied, so the logged
+     * changes are never dropped before the files hold them, and a save cut
+     * short is finished or undone when the database is opened again.
      */
     public void saveDatabase() throws IOException {
-        if (databaseFile != null) {
-            FileHandler.saveDatabaseCatalog(databaseFile, tableFiles);
-            
-            // Save all tables
-            for (Map.Entry<String, String> entry : tableFiles.entrySet()) {
-                String tableName = entry.getKey();
-                String tableFile = entry.getValue();
-                Table table = tables.get(tableName);
-                FileHandler.saveTable(table, tableFile);
+        databaseLock.writeLock().lock();
+        try {
+            if (databaseFile != null) {
+                // Unloaded tables are unchanged on disk
+                List<PendingSave> saves = new ArrayList<>();
+                try {
+                    for (Map.Entry<String, Table> entry : tables.entrySet()) {
+                        PendingSave save = planSave(entry.getKey(), entry.getValue());
+                        if (save != null) {
+                            saves.add(save);
+                        }
+                    }
+                    if (catalogModified) {
+                        saves.add(new PendingSave(null, null, databaseFile, 0,
+                            FileHandler.createTemporaryFile(databaseFile)));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    for (PendingSave save : saves) {
+                        if (save.temporaryFile != null) {
+                            Files.deleteIfExists(Paths.get(save.temporaryFile));
+                        }
+                    }
+                    throw e;
+                }
+                
+                List<String> arguments = new ArrayList<>();
+                for (PendingSave save : saves) {
+                    arguments.add(save.filePath);
+                    arguments.add(save.temporaryFile == null ? "append" : "replace");
+                    arguments.add(save.temporaryFile == null ? String.valueOf(save.fileLength) : save.temporaryFile);
+                }
+                String[] record = arguments.toArray(new String[0]);
+                try {
+                    if (log != null) {
+                        log.log("savebegin", record);
+                    }
+                    for (PendingSave save : saves) {
+                        save.write(tableFiles, indexes);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    try {
+                        undoSave(record);
+                    } catch (IOException undoFailure) {
+                        e.addSuppressed(undoFailure);
+                    }
+                    throw e;
+                }
+                // Once the commit is written the files are complete either way, so nothing is undone if it fails
+                if (log != null) {
+                    log.log("savecommit");
+                }
+                
+                for (PendingSave save : saves) {
+                    if (save.temporaryFile != null) {
+                        FileHandler.replaceFile(save.temporaryFile, save.filePath);
+                    }
+                    if (save.table != null) {
+                        markSaved(save.tableName, save.table);
+                    } else {
+                        catalogModified = false;
+                    }
+                }
+                
+                // Everything in the log is in the table files now
+                if (log != null) {
+                    log.truncate();
+                }
+            } else {
+                throw new IllegalStateException("No database file specified");
+            }
+        } finally {
+            databaseLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Works out how a table is saved if it was modified since its last load
+     * or save, or returns null if there's nothing to write
+     */
+    private PendingSave planSave(String tableName, Table table) throws IOException {
+        SaveState state = saveStates.get(tableName);
+        if (state != null && state.version == table.getVersion()) {
+            return null;
+        }
+        
+        String tableFile = tableFiles.get(tableName);
+        boolean appendOnly = state != null
+            && state.rewriteVersion == table.getRewriteVersion()
+            && !BinaryTableFile.isBinaryFile(tableFile)
+            && new File(tableFile).exists();
+        if (!appendOnly) {
+            return new PendingSave(tableName, table, tableFile, 0, FileHandler.createTemporaryFile(tableFile));
+        }
+        if (table.getRowCount() == state.rowCount) {
+            markSaved(tableName, table);
+            return null;
+        }
+        return new PendingSave(tableName, table, tableFile, state.rowCount, null);
+    }
+    
+    /**
+     * Moves the temporary files of a committed save into place, unless that
+     * was done before the crash
+     */
+    private static void finishSave(String[] arguments) throws IOException {
+        for (int i = 0; i + 2 < arguments.length; i += 3) {
+            if (arguments[i + 1].equals("replace") && new File(arguments[i + 2]).exists()) {
+                FileHandler.replaceFile(arguments[i + 2], arguments[i]);
+            }
+        }
+    }
+    
+    /**
+     * Undoes a save that wasn't committed: appended files are cut back to
+     * their old length and temporary files are deleted
+     */
+    private static void undoSave(String[] arguments) throws IOException {
+        for (int i = 0; i + 2 < arguments.length; i += 3) {
+            if (arguments[i + 1].equals("append")) {
+                FileHandler.truncateFile(arguments[i], Long.parseLong(arguments[i + 2]));
+            } else {
+                Files.deleteIfExists(Paths.get(arguments[i + 2]));
             }
-        } else {
-            throw new IllegalStateException("No database file specified");
         }
     }
     
@@ -64,26 +430,67 @@ public class DatabaseManager {
      * Saves the database to a new file
      */
     public void saveAsDatabase(String filePath) throws IOException {
-        this.databaseFile = filePath;
-        saveDatabase();
+        databaseLock.writeLock().lock();
+        try {
+            this.databaseFile = filePath;
+            catalogModified = true;
+            saveDatabase();
+            
+            // Continue logging next to the new catalog
+            closeLog();
+            log = WriteAheadLog.open(filePath + LOG_EXTENSION);
+            log.truncate();
+        } finally {
+            databaseLock.writeLock().unlock();
+        }
     }
     
     /**
-     * Imports a table from a file
+     * Imports a table from a file. The file is read before anything is
+     * locked. The database is then saved before the import is acknowledged,
+     * so the catalog holds the table and replaying the log never reads the
+     * file again; if the save fails, the table is dropped again.
      */
     public void importTable(String filePath) throws IOException {
         // Extract table name from file path
         String fileName = new File(filePath).getName();
         String tableName = fileName.substring(0, fileName.lastIndexOf('.'));
-        
-        if (tables.containsKey(tableName)) {
+        if (tableFiles.containsKey(tableName)) {
             throw new IllegalArgumentException("Table with name '" + tableName + "' already exists");
         }
         
         // Load table from file
         Table table = FileHandler.loadTable(tableName, filePath);
-        tables.put(tableName, table);
-        tableFiles.put(tableName, filePath);
+        databaseLock.writeLock().lock();
+        try {
+            if (tableFiles.putIfAbsent(tableName, filePath) != null) {
+                throw new IllegalArgumentException("Table with name '" + tableName + "' already exists");
+            }
+            catalogModified = true;
+            loadLock.lock();
+            try {
+                cacheLoadedTable(tableName, table);
+            } finally {
+                loadLock.unlock();
+            }
+            if (log != null && !replaying) {
+                try {
+                    saveDatabase();
+                } catch (IOException | RuntimeException e) {
+                    tables.remove(tableName);
+                    tableFiles.remove(tableName);
+                    saveStates.remove(tableName);
+                    tableSizes.remove(tableName);
+                    lastUsed.remove(tableName);
+                    resultCache.invalidate(tableName);
+                    // The catalog may have been written with the table before the save failed
+                    catalogModified = true;
+                    throw e;
+                }
+            }
+        } finally {
+            databaseLock.writeLock().unlock();
+        }
     }
     
     /**
@@ -94,64 +501,531 @@ public class DatabaseManager {
         FileHandler.saveTable(table, filePath);
     }
     
+    /**
+     * Writes a table to a new file and points the catalog at it; the file
+     * extension picks the format (.tbl text, .tblb binary)
+     */
+    public void convertTable(String tableName, String filePath) throws IOException {
+        databaseLock.readLock().lock();
+        try {
+            // The file gets the table as of the snapshot; later changes stay
+            // pending and are saved on top of it like any other change
+            Table snapshot = getTable(tableName).snapshot();
+            FileHandler.saveTable(snapshot, filePath);
+            tableFiles.put(tableName, filePath);
+            catalogModified = true;
+            saveStates.put(tableName, new SaveState(snapshot));
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
+    
     /**
      * Gets a list of all table names
      */
     public List<String> getTableNames() {
-        return new ArrayList<>(tables.keySet());
+        return new ArrayList<>(tableFiles.keySet());
     }
     
     /**
-     * Gets a table by name
+     * Gets a table by name, loading it from its file if it isn't in memory
      */
     public Table getTable(String name) {
+        databaseLock.readLock().lock();
+        try {
+            Table table = tables.get(name);
+            if (table == null) {
+                table = loadTable(name);
+            }
+            lastUsed.put(name, useCounter.incrementAndGet());
+            return table;
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Returns the planner that chooses how commands on the tables run
+     */
+    public QueryPlanner getPlanner() {
+        return planner;
+    }
+    
+    /**
+     * Returns the cache of select, count and aggregate results, which drops
+     * the results of a table whenever the table changes
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+    
+    /**
+     * Plans joining two tables the way innerJoin would, without joining them
+     */
+    public QueryPlan planJoin(String table1Name, int columnIndex1, String table2Name, int columnIndex2) {
+        return planner.planJoin(getTable(table1Name), columnIndex1, getTable(table2Name), columnIndex2);
+    }
+    
+    /**
+     * Loads a table from its file unless another thread loaded it first
+     */
+    private Table loadTable(String name) {
+        loadLock.lock();
+        try {
+            Table table = tables.get(name);
+            if (table != null) {
+                return table;
+            }
+            String tableFile = tableFiles.get(name);
+            if (tableFile == null) {
+                throw new IllegalArgumentException("Table with name '" + name + "' doesn't exist");
+            }
+            try {
+                table = FileHandler.loadTable(name, tableFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load table '" + name + "': " + e.getMessage(), e);
+            }
+            cacheLoadedTable(name, table);
+            return table;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+    
+    /**
+     * Gets a table and locks it for reading or writing. Retries if the table
+     * was evicted before the lock was taken, so changes never go to a table
+     * that is no longer in the catalog.
+     */
+    private Table lockTable(String name, boolean write) {
+        while (true) {
+            Table table = getTable(name);
+            Lock lock = write ? table.writeLock() : table.readLock();
+            lock.lock();
+            if (tables.get(name) == table) {
+                return table;
+            }
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Applies a change to a table under its write lock and logs it
+     */
+    private void changeTable(String tableName, Consumer<Table> change, String operation, String... arguments)
+            throws IOException {
+        databaseLock.readLock().lock();
+        try {
+            long sequence;
+            Table table = lockTable(tableName, true);
+            try {
+                change.accept(table);
+                sequence = appendLog(operation, arguments);
+            } finally {
+                resultCache.invalidate(tableName);
+                table.writeLock().unlock();
+            }
+            syncLog(sequence);
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Checks whether a table is currently held in memory
+     */
+    public boolean isLoaded(String name) {
+        return tables.containsKey(name);
+    }
+    
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+    
+    /**
+     * Sets the heap budget for loaded tables in bytes and evicts tables if it is exceeded
+     */
+    public void setMemoryBudget(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.memoryBudget = bytes;
+        loadLock.lock();
+        try {
+            evictIfNeeded(null);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+    
+    /**
+     * Returns the estimated heap used by the loaded tables in bytes
+     */
+    public long getLoadedTablesSize() {
+        long total = 0;
+        for (Map.Entry<String, Table> entry : tables.entrySet()) {
+            total += estimateSize(entry.getKey(), entry.getValue());
+        }
+        return total;
+    }
+    
+    /**
+     * Registers a table that was just read from its file and makes room for
+     * it; callers hold the load lock
+     */
+    private void cacheLoadedTable(String name, Table table) {
+        for (IndexDefinition index : indexes.getOrDefault(name, Collections.emptySet())) {
+            index.createOn(table);
+        }
+        // Results of an earlier copy of the table never match this one
+        resultCache.invalidate(name);
+        tables.put(name, table);
+        lastUsed.put(name, useCounter.incrementAndGet());
+        markSaved(name, table);
+        evictIfNeeded(name);
+    }
+    
+    /**
+     * Records that a table matches its file
+     */
+    private void markSaved(String name, Table table) {
+        saveStates.put(name, new SaveState(table));
+        tableSizes.put(name, table.estimateMemoryBytes());
+    }
+    
+    /**
+     * Checks whether a table differs from its file
+     */
+    public boolean isModified(String name) {
         Table table = tables.get(name);
-        if (table == null) {
-            throw new IllegalArgumentException("Table with name '" + name + "' doesn't exist");
+        return table != null && isModified(name, table);
+    }
+    
+    private boolean isModified(String name, Table table) {
+        SaveState state = saveStates.get(name);
+        return state == null || state.version != table.getVersion();
+    }
+    
+    private long estimateSize(String name, Table table) {
+        // Sizes of unmodified tables can't have changed since they were recorded
+        Long size = tableSizes.get(name);
+        if (size == null || isModified(name, table)) {
+            size = table.estimateMemoryBytes();
+            tableSizes.put(name, size);
+        }
+        return size;
+    }
+    
+    /**
+     * Drops least recently used, unmodified tables until the loaded tables fit
+     * the memory budget; callers hold the load lock. The table being loaded is
+     * never dropped, and neither is a table another thread has locked.
+     */
+    private void evictIfNeeded(String pinnedName) {
+        long total = getLoadedTablesSize();
+        if (total <= memoryBudget) {
+            return;
+        }
+        List<String> candidates = new ArrayList<>(tables.keySet());
+        candidates.sort(Comparator.comparingLong(name -> lastUsed.getOrDefault(name, 0L)));
+        for (String name : candidates) {
+            if (total <= memoryBudget) {
+                break;
+            }
+            Table table = tables.get(name);
+            String tableFile = tableFiles.get(name);
+            if (table == null || name.equals(pinnedName) || tableFile == null || !new File(tableFile).exists()) {
+                continue;
+            }
+            // Holding the write lock keeps the table from changing while it is dropped
+            if (!table.writeLock().tryLock()) {
+                continue;
+            }
+            try {
+                if (!isModified(name, table) && tables.remove(name, table)) {
+                    total -= tableSizes.getOrDefault(name, 0L);
+                    lastUsed.remove(name);
+                    // Cached select results would keep the dropped table's storage alive
+                    resultCache.invalidate(name);
+                }
+            } finally {
+                table.writeLock().unlock();
+            }
         }
-        return table;
     }
     
     /**
      * Adds a new table
      */
     public void addTable(Table table) {
-        if (tables.containsKey(table.getName())) {
+        // Create a default file path for the table
+        String tableFile = table.getName() + ".tbl";
+        if (tableFiles.putIfAbsent(table.getName(), tableFile) != null) {
             throw new IllegalArgumentException("Table with name '" + table.getName() + "' already exists");
         }
         tables.put(table.getName(), table);
-        
-        // Create a default file path for the table
-        String tableFile = table.getName() + ".tbl";
-        tableFiles.put(table.getName(), tableFile);
+        lastUsed.put(table.getName(), useCounter.incrementAndGet());
+        resultCache.invalidate(table.getName());
+        catalogModified = true;
     }
     
     /**
      * Renames a table
      */
-    public void renameTable(String oldName, String newName) {
-        if (!tables.containsKey(oldName)) {
-            throw new IllegalArgumentException("Table with name '" + oldName + "' doesn't exist");
+    public void renameTable(String oldName, String newName) throws IOException {
+        databaseLock.writeLock().lock();
+        try {
+            if (!tableFiles.containsKey(oldName)) {
+                throw new IllegalArgumentException("Table with name '" + oldName + "' doesn't exist");
+            }
+            if (tableFiles.containsKey(newName)) {
+                throw new IllegalArgumentException("Table with name '" + newName + "' already exists");
+            }
+            
+            // A table that isn't loaded picks up the new name when it is loaded
+            resultCache.invalidate(oldName);
+            resultCache.invalidate(newName);
+            Table table = tables.remove(oldName);
+            if (table != null) {
+                table.setName(newName);
+                tables.put(newName, table);
+            }
+            moveEntry(indexes, oldName, newName);
+            moveEntry(saveStates, oldName, newName);
+            moveEntry(tableSizes, oldName, newName);
+            moveEntry(lastUsed, oldName, newName);
+            
+            // Update file mapping
+            String tableFile = tableFiles.remove(oldName);
+            tableFiles.put(newName, tableFile);
+            catalogModified = true;
+            logChange("rename", oldName, newName);
+        } finally {
+            databaseLock.writeLock().unlock();
         }
-        if (tables.containsKey(newName)) {
-            throw new IllegalArgumentException("Table with name '" + newName + "' already exists");
+    }
+    
+    private static <V> void moveEntry(Map<String, V> map, String oldKey, String newKey) {
+        V value = map.remove(oldKey);
+        if (value != null) {
+            map.put(newKey, value);
         }
-        
-        Table table = tables.remove(oldName);
-        table.setName(newName);
-        tables.put(newName, table);
-        
-        // Update file mapping
-        String tableFile = tableFiles.remove(oldName);
-        tableFiles.put(newName, tableFile);
+    }
+    
+    /**
+     * Inserts a row given as one value per column, written as in commands and table files
+     */
+    public void insertRow(String tableName, String[] values) throws IOException {
+        String[] arguments = new String[values.length + 1];
+        arguments[0] = tableName;
+        System.arraycopy(values, 0, arguments, 1, values.length);
+        changeTable(tableName, table -> {
+            List<Column> columns = table.getColumns();
+            if (values.length != columns.size()) {
+                throw new IllegalArgumentException("Number of values doesn't match column count");
+            }
+            
+            Row row = new Row();
+            for (int i = 0; i < columns.size(); i++) {
+                row.addCell(Cell.parseCell(values[i], columns.get(i).getType()));
+            }
+            table.addRow(row);
+        }, "insert", arguments);
+    }
+    
+    /**
+     * Appends the rows of a CSV file to a table and returns how many were
+     * added. The file is parsed before anything is locked.
+     *
+     * The parsed rows are logged in bulkrows records of BATCH_SIZE rows
+     * before the table is touched, so replaying the log never reads the CSV
+     * file again. They only count once the bulkcommit record written under
+     * the table lock follows, so a load cut short adds no rows. If the commit
+     * can't be logged, the rows are removed again before the table is unlocked.
+     */
+    public int bulkLoad(String tableName, String filePath) throws IOException {
+        List<ColumnData> rows = BulkLoader.parse(filePath, getTable(tableName));
+        int added = rows.isEmpty() ? 0 : rows.get(0).size();
+        databaseLock.readLock().lock();
+        try {
+            String loadId = null;
+            if (added > 0 && log != null && !replaying) {
+                loadId = UUID.randomUUID().toString();
+                for (int start = 0; start < added; start += BulkLoader.BATCH_SIZE) {
+                    int end = Math.min(start + BulkLoader.BATCH_SIZE, added);
+                    log.log("bulkrows", BulkLoader.formatRows(loadId, rows, start, end));
+                }
+            }
+            appendRows(tableName, rows, loadId);
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+        return added;
+    }
+    
+    /**
+     * Appends parsed rows to a table and commits the logged rows of the bulk
+     * load with the given id, if there is one; callers hold the database lock
+     */
+    private void appendRows(String tableName, List<ColumnData> rows, String loadId) throws IOException {
+        Table table = lockTable(tableName, true);
+        try {
+            int rowCount = table.getRowCount();
+            table.appendColumns(rows);
+            if (loadId != null) {
+                try {
+                    log.log("bulkcommit", tableName, loadId);
+                } catch (IOException | RuntimeException e) {
+                    table.truncateRows(rowCount);
+                    throw e;
+                }
+            }
+        } finally {
+            resultCache.invalidate(tableName);
+            table.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Updates the rows of a table that match a search value
+     */
+    public void updateRows(String tableName, int searchColumnIndex, String searchValue,
+                           int targetColumnIndex, String targetValue) throws IOException {
+        changeTable(tableName, table -> table.update(searchColumnIndex, searchValue, targetColumnIndex, targetValue),
+            "update", tableName, String.valueOf(searchColumnIndex), searchValue,
+            String.valueOf(targetColumnIndex), targetValue);
+    }
+    
+    /**
+     * Updates the rows of a table that match a WHERE expression
+     */
+    public void updateRows(String tableName, WhereExpression where, int targetColumnIndex, String targetValue)
+            throws IOException {
+        changeTable(tableName, table -> table.update(where, targetColumnIndex, targetValue),
+            "updatewhere", tableName, where.toString(), String.valueOf(targetColumnIndex), targetValue);
+    }
+    
+    /**
+     * Deletes the rows of a table that match a search value
+     */
+    public void deleteRows(String tableName, int searchColumnIndex, String searchValue) throws IOException {
+        changeTable(tableName, table -> table.delete(searchColumnIndex, searchValue),
+            "delete", tableName, String.valueOf(searchColumnIndex), searchValue);
+    }
+    
+    /**
+     * Deletes the rows of a table that match a WHERE expression
+     */
+    public void deleteRows(String tableName, WhereExpression where) throws IOException {
+        changeTable(tableName, table -> table.delete(where), "deletewhere", tableName, where.toString());
+    }
+    
+    /**
+     * Adds a column to a table
+     */
+    public void addColumn(String tableName, String columnName, DataType type) throws IOException {
+        changeTable(tableName, table -> table.addColumn(columnName, type),
+            "addcolumn", tableName, columnName, type.name());
+    }
+    
+    /**
+     * Switches a STRING column of a table to or from dictionary encoding
+     */
+    public void setDictionaryEncoded(String tableName, int columnIndex, boolean encoded) throws IOException {
+        changeTable(tableName, table -> table.setDictionaryEncoded(columnIndex, encoded),
+            "encode", tableName, String.valueOf(columnIndex), String.valueOf(encoded));
+    }
+    
+    /**
+     * Creates a hash index, or a sorted index, on a column of a table. The
+     * index is added to the catalog, so it is built again whenever the table
+     * is loaded.
+     */
+    public void createIndex(String tableName, int columnIndex, boolean sorted) throws IOException {
+        IndexDefinition index = new IndexDefinition(columnIndex, sorted);
+        changeTable(tableName, table -> {
+            index.createOn(table);
+            indexes.computeIfAbsent(tableName, name -> new LinkedHashSet<>()).add(index);
+            catalogModified = true;
+        }, "createindex", tableName, String.valueOf(columnIndex), String.valueOf(sorted));
     }
     
     /**
      * Performs an inner join on two tables
      */
-    public Table innerJoin(String table1Name, int columnIndex1, String table2Name, int columnIndex2) {
-        Table table1 = getTable(table1Name);
-        Table table2 = getTable(table2Name);
+    public Table innerJoin(String table1Name, int columnIndex1, String table2Name, int columnIndex2) throws IOException {
+        databaseLock.readLock().lock();
+        try {
+            long sequence;
+            Table left;
+            Table right;
+            Table result;
+            QueryPlan.Join plan;
+            Table[] sources = readLockTables(table1Name, table2Name);
+            try {
+                // The join is logged while the inputs can't change, so replaying
+                // the log joins the same rows; the rows themselves are joined
+                // from snapshots once the inputs are unlocked. Planning on the
+                // tables themselves keeps their statistics for later joins.
+                plan = (QueryPlan.Join) planner.planJoin(sources[0], columnIndex1, sources[1], columnIndex2);
+                left = sources[0].snapshot();
+                right = sources[1].snapshot();
+                result = createJoinTable(left, columnIndex1, right, columnIndex2);
+                // The result stays write-locked until it is filled
+                result.writeLock().lock();
+                try {
+                    addTable(result);
+                    sequence = appendLog("innerjoin", table1Name, String.valueOf(columnIndex1),
+                        table2Name, String.valueOf(columnIndex2));
+                } catch (RuntimeException e) {
+                    result.writeLock().unlock();
+                    throw e;
+                }
+            } finally {
+                sources[0].readLock().unlock();
+                if (sources[1] != sources[0]) {
+                    sources[1].readLock().unlock();
+                }
+            }
+            try {
+                HashJoin.join(left, columnIndex1, right, columnIndex2, result, plan.isBuildRight());
+            } finally {
+                result.writeLock().unlock();
+            }
+            syncLog(sequence);
+            return result;
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Read-locks two tables, always in name order so concurrent joins can't deadlock
+     */
+    private Table[] readLockTables(String name1, String name2) {
+        if (name1.equals(name2)) {
+            Table table = lockTable(name1, false);
+            return new Table[] {table, table};
+        }
+        boolean swapped = name1.compareTo(name2) > 0;
+        Table first = lockTable(swapped ? name2 : name1, false);
+        Table second;
+        try {
+            second = lockTable(swapped ? name1 : name2, false);
+        } catch (RuntimeException e) {
+            first.readLock().unlock();
+            throw e;
+        }
+        return swapped ? new Table[] {second, first} : new Table[] {first, second};
+    }
+    
+    /**
+     * Creates the empty table that the join of two tables is written to
+     */
+    private static Table createJoinTable(Table table1, int columnIndex1, Table table2, int columnIndex2) {
+        // Validate the join columns before building anything
+        table1.getColumnData(columnIndex1);
+        table2.getColumnData(columnIndex2);
         
         // Create a new table with combined columns
         String newTableName = table1.getName() + "_" + table2.getName() + "_join";
@@ -167,33 +1041,65 @@ public class DatabaseManager {
             result.addColumn(table2.getName() + "." + column.getName(), column.getType());
         }
         
-        // Perform the inner join
-        for (Row row1 : table1.getRows()) {
-            Cell cell1 = row1.getCell(columnIndex1);
-            
-            for (Row row2 : table2.getRows()) {
-                Cell cell2 = row2.getCell(columnIndex2);
-                
-                // If the join columns match
-                if (cell1.equals(cell2)) {
-                    Row newRow = new Row();
-                    
-                    // Add cells from first table
-                    for (int i = 0; i < row1.size(); i++) {
-                        newRow.addCell(new Cell(row1.getCell(i).getValue(), row1.getCell(i).getType()));
-                    }
-                    
-                    // Add cells from second table
-                    for (int i = 0; i < row2.size(); i++) {
-                        newRow.addCell(new Cell(row2.getCell(i).getValue(), row2.getCell(i).getType()));
-                    }
-                    
-                    result.addRow(newRow);
+        // Keep the encoding of dictionary-encoded columns
+        int resultColumn = 0;
+        for (Table source : Arrays.asList(table1, table2)) {
+            for (int i = 0; i < source.getColumnCount(); i++) {
+                if (source.isDictionaryEncoded(i)) {
+                    result.setDictionaryEncoded(resultColumn, true);
                 }
+                resultColumn++;
             }
         }
-        
-        addTable(result);
         return result;
     }
+    
+    /**
+     * A file that a save writes: rows appended to a table file, or a table
+     * or the catalog written to a temporary file that then replaces it
+     */
+    private static class PendingSave {
+        // Null for the catalog
+        final String tableName;
+        final Table table;
+        final String filePath;
+        final int fromRow;
+        final long fileLength;
+        // Null when rows are appended
+        final String temporaryFile;
+        
+        PendingSave(String tableName, Table table, String filePath, int fromRow, String temporaryFile) {
+            this.tableName = tableName;
+            this.table = table;
+            this.filePath = filePath;
+            this.fromRow = fromRow;
+            this.fileLength = temporaryFile == null ? new File(filePath).length() : -1;
+            this.temporaryFile = temporaryFile;
+        }
+        
+        void write(Map<String, String> tableFiles, Map<String, Set<IndexDefinition>> indexes) throws IOException {
+            if (table == null) {
+                FileHandler.writeDatabaseCatalog(temporaryFile, tableFiles, indexes);
+            } else if (temporaryFile == null) {
+                FileHandler.appendRows(table, filePath, fromRow);
+            } else {
+                FileHandler.writeTable(table, filePath, temporaryFile);
+            }
+        }
+    }
+    
+    /**
+     * What a table looked like when it was last loaded or saved
+     */
+    private static class SaveState {
+        final long version;
+        final long rewriteVersion;
+        final int rowCount;
+        
+        SaveState(Table table) {
+            this.version = table.getVersion();
+            this.rewriteVersion = table.getRewriteVersion();
+            this.rowCount = table.getRowCount();
+        }
+    }
 }
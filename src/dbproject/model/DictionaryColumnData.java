@@ -0,0 +1,208 @@
+package dbproject.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary-encoded storage for a STRING column: each row holds an int code
+ * into a list of the distinct values, so a column with few distinct values
+ * keeps one String per value instead of one per row and equality tests
+ * compare ints. NULL rows hold code -1.
+ *
+ * Codes are only ever added, so a code stays valid for the life of the
+ * column; values that no longer occur after updates and deletes are dropped
+ * when the column is written to a binary table file. Because the dictionary
+ * only grows, snapshots share it with the column and just remember how many
+ * values it had when they were taken.
+ */
+class DictionaryColumnData extends ColumnData {
+    static final int NO_CODE = -1;
+
+    // Map entry and boxed code per dictionary value
+    private static final int ENTRY_OVERHEAD = 64;
+    // String object plus its byte array header
+    private static final int STRING_OVERHEAD = 40;
+    private static final int DICTIONARY_CAPACITY = 16;
+
+    private int[][] chunks;
+    private String[] dictionary;
+    private int dictionarySize;
+    // Concurrent because snapshots look values up while the column adds new ones
+    private final Map<String, Integer> codesByValue;
+
+    DictionaryColumnData() {
+        this.chunks = new int[0][];
+        this.dictionary = new String[DICTIONARY_CAPACITY];
+        this.codesByValue = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Wraps code chunks and a dictionary that were already loaded, e.g. from
+     * a binary table file; slots past the last row must hold NO_CODE
+     */
+    DictionaryColumnData(int[][] chunks, List<String> dictionary, BitSet nulls, int size) {
+        super(nulls, size);
+        this.chunks = chunks;
+        this.dictionary = dictionary.toArray(new String[0]);
+        this.dictionarySize = this.dictionary.length;
+        this.codesByValue = new ConcurrentHashMap<>();
+        for (int code = 0; code < dictionarySize; code++) {
+            codesByValue.put(this.dictionary[code], code);
+        }
+    }
+
+    /**
+     * Creates a snapshot sharing the storage of another column
+     */
+    private DictionaryColumnData(DictionaryColumnData source, BitSet nulls, int size) {
+        super(source, nulls, size);
+        this.chunks = source.chunks.clone();
+        this.dictionary = source.dictionary;
+        this.dictionarySize = source.dictionarySize;
+        this.codesByValue = source.codesByValue;
+    }
+
+    @Override
+    DataType getType() {
+        return DataType.STRING;
+    }
+
+    String getString(int row) {
+        int code = getCode(row);
+        return code == NO_CODE ? null : dictionary[code];
+    }
+
+    /**
+     * Returns the code stored at a row; NULL rows hold NO_CODE
+     */
+    int getCode(int row) {
+        return chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the chunk of codes holding a row, where the row is at
+     * offsetInChunk; callers only read it
+     */
+    int[] getChunk(int row) {
+        return chunks[row >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * Returns the code of a value, or NO_CODE if the value doesn't occur in the dictionary
+     */
+    int codeOf(String value) {
+        Integer code = codesByValue.get(value);
+        // Values added after a snapshot was taken don't exist for it
+        return code == null || code >= dictionarySize ? NO_CODE : code;
+    }
+
+    /**
+     * Returns the value a code stands for
+     */
+    String decode(int code) {
+        return dictionary[code];
+    }
+
+    int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    private int encode(String value) {
+        Integer code = codesByValue.get(value);
+        if (code == null) {
+            if (dictionarySize == dictionary.length) {
+                dictionary = Arrays.copyOf(dictionary, grow(dictionary.length, dictionarySize + 1));
+            }
+            code = dictionarySize;
+            dictionary[dictionarySize++] = value;
+            codesByValue.put(value, code);
+        }
+        return code;
+    }
+
+    @Override
+    protected void checkValue(Object value) {
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Value is not a string: " + value);
+        }
+    }
+
+    @Override
+    protected Object getNonNullValue(int row) {
+        return dictionary[getCode(row)];
+    }
+
+    @Override
+    protected String formatNonNull(int row) {
+        // Escape quotes and backslashes, same as Cell.toString
+        String str = dictionary[getCode(row)].replace("\\", "\\\\").replace("\"", "\\\"");
+        return "\"" + str + "\"";
+    }
+
+    @Override
+    protected void store(int row, Object value) {
+        chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK] = value == null ? NO_CODE : encode((String) value);
+    }
+
+    @Override
+    protected void copyValue(ColumnData source, int from, int to) {
+        int code = source == this ? getCode(from) : encode((String) source.getNonNullValue(from));
+        chunks[to >>> CHUNK_SHIFT][to & CHUNK_MASK] = code;
+    }
+
+    @Override
+    protected void copyRange(ColumnData source, int from, int to, int count) {
+        for (int i = 0; i < count; i++) {
+            store(to + i, source.getValue(from + i));
+        }
+    }
+
+    @Override
+    protected void move(int from, int to) {
+        chunks[to >>> CHUNK_SHIFT][to & CHUNK_MASK] = getCode(from);
+    }
+
+    @Override
+    protected void clear(int from, int to) {
+        for (int row = from; row < to; row++) {
+            chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK] = NO_CODE;
+        }
+    }
+
+    @Override
+    protected void resizeChunk(int chunk, int length) {
+        int oldLength = 0;
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunk + 1);
+            chunks[chunk] = new int[length];
+        } else {
+            oldLength = chunks[chunk].length;
+            chunks[chunk] = Arrays.copyOf(chunks[chunk], length);
+        }
+        // Keep NO_CODE in every NULL slot, including ones added by appendNulls
+        Arrays.fill(chunks[chunk], oldLength, length, NO_CODE);
+    }
+
+    @Override
+    protected ColumnData share(BitSet nulls, int size) {
+        return new DictionaryColumnData(this, nulls, size);
+    }
+
+    @Override
+    protected void copyChunk(int chunk) {
+        // The dictionary only grows past the end of every snapshot, so it stays shared
+        chunks[chunk] = chunks[chunk].clone();
+    }
+
+    @Override
+    protected long estimateValueBytes() {
+        long dictionaryBytes = 8L * dictionary.length;
+        for (int code = 0; code < dictionarySize; code++) {
+            dictionaryBytes += ENTRY_OVERHEAD + STRING_OVERHEAD + dictionary[code].length();
+        }
+        return 4L * capacity() + dictionaryBytes;
+    }
+}
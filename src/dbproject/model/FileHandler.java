@@ -1,31 +1,77 @@
 package dbproject.model;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * Handles file I/O operations for database and table files
+ * Handles file I/O operations for database and table files.
+ * Files are never rewritten in place: a new version is written to a
+ * temporary file next to it, forced to disk and then moved over the old one,
+ * so a crash leaves either the old file or the new one.
  */
 public class FileHandler {
+    // Marks a dictionary-encoded column in a text table file header
+    private static final String DICTIONARY_ENCODING = "DICTIONARY";
+
+    /**
+     * Saves the database catalog to a file: one "name,file" line per table,
+     * then a separator and one "name,column n,HASH|SORTED" line per index
+     */
+    public static void saveDatabaseCatalog(String filePath, Map<String, String> tableFiles,
+                                           Map<String, ? extends Collection<IndexDefinition>> indexes) throws IOException {
+        String temporaryFile = createTemporaryFile(filePath);
+        try {
+            writeDatabaseCatalog(temporaryFile, tableFiles, indexes);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(Paths.get(temporaryFile));
+            throw e;
+        }
+        replaceFile(temporaryFile, filePath);
+    }
+    
     /**
-     * Saves the database catalog to a file
+     * Writes the database catalog to a file and forces it to disk
      */
-    public static void saveDatabaseCatalog(String filePath, Map<String, String> tableFiles) throws IOException {
+    static void writeDatabaseCatalog(String filePath, Map<String, String> tableFiles,
+                                     Map<String, ? extends Collection<IndexDefinition>> indexes) throws IOException {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
             for (Map.Entry<String, String> entry : tableFiles.entrySet()) {
                 writer.write(entry.getKey() + "," + entry.getValue());
                 writer.newLine();
             }
+            if (!indexes.isEmpty()) {
+                writer.write("---");
+                writer.newLine();
+                for (Map.Entry<String, ? extends Collection<IndexDefinition>> entry : indexes.entrySet()) {
+                    for (IndexDefinition index : entry.getValue()) {
+                        writer.write(entry.getKey() + "," + index);
+                        writer.newLine();
+                    }
+                }
+            }
         }
+        force(filePath);
     }
     
     /**
-     * Loads the database catalog from a file
+     * Loads the database catalog from a file; the indexes it lists are added
+     * to indexes by table name
      */
-    public static Map<String, String> loadDatabaseCatalog(String filePath) throws IOException {
+    public static Map<String, String> loadDatabaseCatalog(String filePath,
+                                                          Map<String, Set<IndexDefinition>> indexes) throws IOException {
         Map<String, String> tableFiles = new HashMap<>();
         File file = new File(filePath);
         
@@ -36,11 +82,24 @@ public class FileHandler {
         }
         
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            boolean readingTables = true;
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",", 2);
-                if (parts.length == 2) {
-                    tableFiles.put(parts[0], parts[1]);
+                if (line.equals("---")) {
+                    readingTables = false;
+                } else if (readingTables) {
+                    String[] parts = line.split(",", 2);
+                    if (parts.length == 2) {
+                        tableFiles.put(parts[0], parts[1]);
+                    }
+                } else {
+                    // Table names come first, so split off the definition from the end
+                    int definitionStart = line.lastIndexOf(',', line.lastIndexOf(',') - 1);
+                    if (definitionStart < 0) {
+                        throw new IOException("Invalid index in catalog " + filePath + ": " + line);
+                    }
+                    indexes.computeIfAbsent(line.substring(0, definitionStart), name -> new LinkedHashSet<>())
+                        .add(IndexDefinition.parse(line.substring(definitionStart + 1)));
                 }
             }
         }
@@ -48,13 +107,96 @@ public class FileHandler {
     }
     
     /**
-     * Saves a table to a file
+     * Saves a table to a file; .tblb files use the binary format
      */
     public static void saveTable(Table table, String filePath) throws IOException {
+        String temporaryFile = createTemporaryFile(filePath);
+        try {
+            writeTable(table, filePath, temporaryFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(Paths.get(temporaryFile));
+            throw e;
+        }
+        replaceFile(temporaryFile, filePath);
+    }
+    
+    /**
+     * Writes a table to a temporary file in the format of the file it is
+     * going to replace, and forces it to disk
+     */
+    static void writeTable(Table table, String filePath, String temporaryFile) throws IOException {
+        // Writing a snapshot keeps the table open to changes while the file is written
+        Table snapshot = table.snapshot();
+        if (BinaryTableFile.isBinaryFile(filePath)) {
+            BinaryTableFile.save(snapshot, temporaryFile);
+        } else {
+            saveTextTable(snapshot, temporaryFile);
+        }
+        force(temporaryFile);
+    }
+    
+    /**
+     * Creates an empty temporary file in the directory of the given file,
+     * for writing a new version of it
+     */
+    static String createTemporaryFile(String filePath) throws IOException {
+        Path target = Paths.get(filePath).toAbsolutePath();
+        return Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp").toString();
+    }
+    
+    /**
+     * Moves a temporary file over the file it is a new version of, in one
+     * step, and forces the directory so the move survives a crash
+     */
+    static void replaceFile(String temporaryFile, String filePath) throws IOException {
+        Path target = Paths.get(filePath).toAbsolutePath();
+        try {
+            Files.move(Paths.get(temporaryFile), target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(Paths.get(temporaryFile), target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(target.getParent());
+    }
+    
+    /**
+     * Cuts a file back to the given length, undoing rows appended to it
+     */
+    static void truncateFile(String filePath, long length) throws IOException {
+        if (!new File(filePath).exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE)) {
+            if (channel.size() > length) {
+                channel.truncate(length);
+                channel.force(true);
+            }
+        }
+    }
+    
+    private static void force(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+    
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms can't open or force directories; their moves are durable anyway
+        }
+    }
+    
+    private static void saveTextTable(Table table, String filePath) throws IOException {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
             // Write column definitions
-            for (Column column : table.getColumns()) {
+            List<Column> columns = table.getColumns();
+            for (int i = 0; i < columns.size(); i++) {
+                Column column = columns.get(i);
                 writer.write(column.getName() + "," + column.getType());
+                if (table.isDictionaryEncoded(i)) {
+                    writer.write("," + DICTIONARY_ENCODING);
+                }
                 writer.newLine();
             }
             
@@ -63,24 +205,71 @@ public class FileHandler {
             writer.newLine();
             
             // Write data rows
-            for (Row row : table.getRows()) {
-                StringBuilder rowData = new StringBuilder();
-                for (int i = 0; i < row.size(); i++) {
-                    if (i > 0) {
-                        rowData.append(",");
-                    }
-                    rowData.append(row.getCell(i).toString());
-                }
-                writer.write(rowData.toString());
+            writeRows(writer, table, 0);
+        }
+    }
+    
+    /**
+     * Appends the rows from the given position on to the end of an existing
+     * text table file and forces them to disk
+     */
+    public static void appendRows(Table table, String filePath, int fromRow) throws IOException {
+        appendTextRows(table.snapshot(), filePath, fromRow);
+    }
+    
+    private static void appendTextRows(Table table, String filePath, int fromRow) throws IOException {
+        boolean needsNewline;
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            long length = file.length();
+            if (length == 0) {
+                throw new IOException("Can't append to empty table file: " + filePath);
+            }
+            // Files written by hand may not end with a line break
+            file.seek(length - 1);
+            int lastByte = file.read();
+            needsNewline = lastByte != '\n' && lastByte != '\r';
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath, true))) {
+            if (needsNewline) {
                 writer.newLine();
             }
+            writeRows(writer, table, fromRow);
         }
+        force(filePath);
     }
     
     /**
-     * Loads a table from a file
+     * Writes the data rows from the given position on, one line per row
+     */
+    private static void writeRows(BufferedWriter writer, Table table, int fromRow) throws IOException {
+        int columnCount = table.getColumnCount();
+        StringBuilder rowData = new StringBuilder();
+        for (int row = fromRow; row < table.getRowCount(); row++) {
+            rowData.setLength(0);
+            for (int i = 0; i < columnCount; i++) {
+                if (i > 0) {
+                    rowData.append(",");
+                }
+                rowData.append(table.getColumnData(i).format(row));
+            }
+            writer.write(rowData.toString());
+            writer.newLine();
+        }
+    }
+    
+    /**
+     * Loads a table from a file; .tblb files use the binary format
      */
     public static Table loadTable(String tableName, String filePath) throws IOException {
+        if (BinaryTableFile.isBinaryFile(filePath)) {
+            return BinaryTableFile.load(tableName, filePath);
+        }
+        if (ParallelTableLoader.isWorthwhile(filePath)) {
+            Table table = ParallelTableLoader.load(tableName, filePath);
+            if (table != null) {
+                return table;
+            }
+        }
         Table table = new Table(tableName);
         try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             boolean readingColumns = true;
@@ -93,13 +282,7 @@ public class FileHandler {
                 }
                 
                 if (readingColumns) {
-                    // Parse column definition
-                    String[] parts = line.split(",", 2);
-                    if (parts.length == 2) {
-                        String columnName = parts[0];
-                        DataType columnType = DataType.valueOf(parts[1]);
-                        table.addColumn(columnName, columnType);
-                    }
+                    addColumnDefinition(table, line);
                 } else {
                     // Parse data row
                     List<String> cellValues = parseCsvLine(line);
@@ -118,10 +301,26 @@ public class FileHandler {
         return table;
     }
     
+    /**
+     * Parses a column definition line ("name,TYPE" with an optional
+     * ",DICTIONARY" for dictionary-encoded columns) and adds the column to the table
+     */
+    static void addColumnDefinition(Table table, String line) {
+        String[] parts = line.split(",", 3);
+        if (parts.length >= 2) {
+            String columnName = parts[0];
+            DataType columnType = DataType.valueOf(parts[1]);
+            table.addColumn(columnName, columnType);
+            if (parts.length == 3 && parts[2].equals(DICTIONARY_ENCODING)) {
+                table.setDictionaryEncoded(table.getColumnCount() - 1, true);
+            }
+        }
+    }
+    
     /**
      * Parses a CSV line, handling quoted strings with commas
      */
-    private static List<String> parseCsvLine(String line) {
+    static List<String> parseCsvLine(String line) {
         List<String> result = new ArrayList<>();
         StringBuilder currentValue = new StringBuilder();
         boolean inQuotes = false;
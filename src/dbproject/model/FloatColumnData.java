@@ -0,0 +1,120 @@
+package dbproject.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Storage for a FLOAT column backed by chunks of double arrays
+ */
+class FloatColumnData extends NumericColumnData {
+    private double[][] chunks;
+
+    FloatColumnData() {
+        this.chunks = new double[0][];
+    }
+
+    FloatColumnData(double[][] chunks, BitSet nulls, int size) {
+        super(nulls, size);
+        this.chunks = chunks;
+        buildZones();
+    }
+
+    private FloatColumnData(FloatColumnData source, BitSet nulls, int size) {
+        super(source, nulls, size);
+        this.chunks = source.chunks.clone();
+    }
+
+    @Override
+    DataType getType() {
+        return DataType.FLOAT;
+    }
+
+    /**
+     * Returns the chunk holding a row, where the row is at offsetInChunk;
+     * callers only read it
+     */
+    double[] getChunk(int row) {
+        return chunks[row >>> CHUNK_SHIFT];
+    }
+
+    @Override
+    double getDouble(int row) {
+        return chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    @Override
+    protected void checkValue(Object value) {
+        if (value != null && !(value instanceof Number)) {
+            throw new IllegalArgumentException("Value is not a number: " + value);
+        }
+    }
+
+    @Override
+    protected Object getNonNullValue(int row) {
+        return getDouble(row);
+    }
+
+    @Override
+    protected String formatNonNull(int row) {
+        return Double.toString(getDouble(row));
+    }
+
+    @Override
+    protected void store(int row, Object value) {
+        chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK] = value == null ? 0 : ((Number) value).doubleValue();
+    }
+
+    @Override
+    protected void copyValue(ColumnData source, int from, int to) {
+        chunks[to >>> CHUNK_SHIFT][to & CHUNK_MASK] = ((FloatColumnData) source).getDouble(from);
+    }
+
+    @Override
+    protected void copyRange(ColumnData source, int from, int to, int count) {
+        FloatColumnData doubles = (FloatColumnData) source;
+        while (count > 0) {
+            int length = Math.min(count, CHUNK_SIZE - Math.max(from & CHUNK_MASK, to & CHUNK_MASK));
+            System.arraycopy(doubles.getChunk(from), from & CHUNK_MASK, getChunk(to), to & CHUNK_MASK, length);
+            from += length;
+            to += length;
+            count -= length;
+        }
+    }
+
+    @Override
+    protected void move(int from, int to) {
+        chunks[to >>> CHUNK_SHIFT][to & CHUNK_MASK] = getDouble(from);
+    }
+
+    @Override
+    protected void clear(int from, int to) {
+        for (int row = from; row < to; row++) {
+            chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK] = 0;
+        }
+    }
+
+    @Override
+    protected void resizeChunk(int chunk, int length) {
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunk + 1);
+            chunks[chunk] = new double[length];
+        } else {
+            chunks[chunk] = Arrays.copyOf(chunks[chunk], length);
+        }
+    }
+
+    @Override
+    protected ColumnData share(BitSet nulls, int size) {
+        return new FloatColumnData(this, nulls, size);
+    }
+
+    @Override
+    protected void copyChunk(int chunk) {
+        chunks[chunk] = chunks[chunk].clone();
+    }
+
+    @Override
+    protected long estimateValueBytes() {
+        return 8L * capacity() + zones.estimateBytes();
+    }
+}
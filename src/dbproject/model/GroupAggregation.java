@@ -0,0 +1,300 @@
+package dbproject.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates a numeric column per distinct value of a key column in one pass.
+ * Groups are found through a hash map from key to slot, and the running
+ * state of every group lives in primitive arrays indexed by slot.
+ *
+ * At most groupLimit groups are kept in memory. Once that many exist, rows
+ * of groups that are already in memory are still aggregated there, while
+ * rows of new groups are written to one of 16 temporary partition files
+ * chosen by the key's hash. Each partition is then aggregated the same way,
+ * splitting it further by the next bits of the hash if it still has too many
+ * groups. Every row of a group ends up in the same place, in table order, so
+ * spilling doesn't change any result.
+ */
+class GroupAggregation {
+    static final int DEFAULT_GROUP_LIMIT = 1 << 20;
+
+    private static final int PARTITION_BITS = 4;
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+    // Each level uses the next bits of the hash; past the last one nothing spills
+    private static final int MAX_DEPTH = Integer.SIZE / PARTITION_BITS - 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final int KEY_NULL = 1;
+    private static final int VALUE_NULL = 2;
+
+    private final DataType keyType;
+    private final int groupLimit;
+    private final int depth;
+    private final Map<Object, Integer> slots;
+    private Object[] keys;
+    private long[] matchedRows;
+    private long[] counts;
+    private double[] sums;
+    private double[] products;
+    private double[] maxima;
+    private double[] minima;
+    private int groupCount;
+    private Spill spill;
+
+    private GroupAggregation(DataType keyType, int groupLimit, int depth) {
+        this.keyType = keyType;
+        this.groupLimit = groupLimit;
+        this.depth = depth;
+        this.slots = new HashMap<>();
+        int capacity = 16;
+        this.keys = new Object[capacity];
+        this.matchedRows = new long[capacity];
+        this.counts = new long[capacity];
+        this.sums = new double[capacity];
+        this.products = new double[capacity];
+        this.maxima = new double[capacity];
+        this.minima = new double[capacity];
+    }
+
+    /**
+     * Aggregates the target column over the first rowCount rows per value of
+     * the key column and returns a table with one row per group: the key
+     * followed by one column per operation
+     */
+    static Table aggregate(String tableName, Column keyColumn, ColumnData keyData, Column targetColumn,
+                           NumericColumnData targetData, int rowCount, List<String> operations, int groupLimit)
+            throws IOException {
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column(keyColumn.getName(), keyColumn.getType()));
+        for (String operation : operations) {
+            DataType type = operation.equalsIgnoreCase("count") ? DataType.INTEGER : DataType.FLOAT;
+            columns.add(new Column(operation.toLowerCase() + "(" + targetColumn.getName() + ")", type));
+        }
+        List<ColumnData> result = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            result.add(ColumnData.create(column.getType()));
+        }
+
+        GroupAggregation groups = new GroupAggregation(keyColumn.getType(), groupLimit, 0);
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                boolean valueNull = targetData.isNull(row);
+                groups.add(keyData.getValue(row), valueNull, valueNull ? 0 : targetData.getDouble(row));
+            }
+            groups.finish(operations, result);
+        } finally {
+            groups.deleteSpill();
+        }
+        return new Table(tableName, columns, result, result.get(0).size());
+    }
+
+    /**
+     * Adds a row to its group, or to a partition file if the group isn't in
+     * memory and there is no room for it
+     */
+    private void add(Object key, boolean valueNull, double value) throws IOException {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            if (groupCount >= groupLimit && depth < MAX_DEPTH) {
+                if (spill == null) {
+                    spill = new Spill(keyType);
+                }
+                spill.write(partitionOf(key), key, valueNull, value);
+                return;
+            }
+            slot = newGroup(key);
+        }
+        matchedRows[slot]++;
+        if (valueNull) {
+            return;
+        }
+        counts[slot]++;
+        sums[slot] += value;
+        products[slot] *= value;
+        // Same comparisons as Aggregation, so the results match a filtered aggregate
+        if (value > maxima[slot]) {
+            maxima[slot] = value;
+        }
+        if (value < minima[slot]) {
+            minima[slot] = value;
+        }
+    }
+
+    /**
+     * Appends the results of the groups in memory, then aggregates every
+     * partition file this level spilled
+     */
+    private void finish(List<String> operations, List<ColumnData> result) throws IOException {
+        for (int slot = 0; slot < groupCount; slot++) {
+            result.get(0).append(keys[slot]);
+            for (int i = 0; i < operations.size(); i++) {
+                Object value = Aggregation.result(operations.get(i), matchedRows[slot], counts[slot], sums[slot],
+                    products[slot], maxima[slot], minima[slot]);
+                if (value instanceof Long) {
+                    value = ((Long) value).intValue();
+                }
+                result.get(i + 1).append(value);
+            }
+        }
+        if (spill == null) {
+            return;
+        }
+        spill.close();
+        for (File partition : spill.files) {
+            if (partition == null) {
+                continue;
+            }
+            GroupAggregation groups = new GroupAggregation(keyType, groupLimit, depth + 1);
+            try {
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(partition), BUFFER_SIZE))) {
+                    groups.readPartition(in);
+                }
+                groups.finish(operations, result);
+            } finally {
+                groups.deleteSpill();
+            }
+            partition.delete();
+        }
+    }
+
+    private void readPartition(DataInputStream in) throws IOException {
+        while (true) {
+            int flags;
+            try {
+                flags = in.readUnsignedByte();
+            } catch (EOFException e) {
+                return;
+            }
+            Object key = (flags & KEY_NULL) != 0 ? null : readKey(in, keyType);
+            boolean valueNull = (flags & VALUE_NULL) != 0;
+            add(key, valueNull, valueNull ? 0 : in.readDouble());
+        }
+    }
+
+    private int newGroup(Object key) {
+        if (groupCount == keys.length) {
+            int capacity = ColumnData.grow(keys.length, groupCount + 1);
+            keys = Arrays.copyOf(keys, capacity);
+            matchedRows = Arrays.copyOf(matchedRows, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            products = Arrays.copyOf(products, capacity);
+            maxima = Arrays.copyOf(maxima, capacity);
+            minima = Arrays.copyOf(minima, capacity);
+        }
+        int slot = groupCount++;
+        keys[slot] = key;
+        products[slot] = 1;
+        maxima[slot] = Double.NEGATIVE_INFINITY;
+        minima[slot] = Double.POSITIVE_INFINITY;
+        slots.put(key, slot);
+        return slot;
+    }
+
+    private int partitionOf(Object key) {
+        int hash = (key == null ? 0 : key.hashCode()) * 0x9E3779B9;
+        return (hash >>> (Integer.SIZE - PARTITION_BITS * (depth + 1))) & (PARTITIONS - 1);
+    }
+
+    private void deleteSpill() {
+        if (spill != null) {
+            spill.delete();
+        }
+    }
+
+    private static Object readKey(DataInputStream in, DataType type) throws IOException {
+        switch (type) {
+            case INTEGER:
+                return in.readInt();
+            case FLOAT:
+                return in.readDouble();
+            default:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Partition files of one level, created when the first row goes to them.
+     * Records are a flags byte, the key unless it is NULL and the value unless
+     * it is NULL.
+     */
+    private static class Spill {
+        private final DataType keyType;
+        private final File[] files = new File[PARTITIONS];
+        private final DataOutputStream[] outputs = new DataOutputStream[PARTITIONS];
+
+        Spill(DataType keyType) {
+            this.keyType = keyType;
+        }
+
+        void write(int partition, Object key, boolean valueNull, double value) throws IOException {
+            DataOutputStream out = outputs[partition];
+            if (out == null) {
+                files[partition] = File.createTempFile("groupby", ".part");
+                files[partition].deleteOnExit();
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files[partition]), BUFFER_SIZE));
+                outputs[partition] = out;
+            }
+            out.writeByte((key == null ? KEY_NULL : 0) | (valueNull ? VALUE_NULL : 0));
+            if (key != null) {
+                switch (keyType) {
+                    case INTEGER:
+                        out.writeInt((Integer) key);
+                        break;
+                    case FLOAT:
+                        out.writeDouble((Double) key);
+                        break;
+                    default:
+                        byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                        break;
+                }
+            }
+            if (!valueNull) {
+                out.writeDouble(value);
+            }
+        }
+
+        void close() throws IOException {
+            for (int i = 0; i < PARTITIONS; i++) {
+                if (outputs[i] != null) {
+                    outputs[i].close();
+                    outputs[i] = null;
+                }
+            }
+        }
+
+        void delete() {
+            for (int i = 0; i < PARTITIONS; i++) {
+                try {
+                    if (outputs[i] != null) {
+                        outputs[i].close();
+                    }
+                } catch (IOException e) {
+                    // The file is deleted anyway
+                }
+                if (files[i] != null) {
+                    files[i].delete();
+                }
+            }
+        }
+    }
+}
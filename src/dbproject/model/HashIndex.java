@@ -0,0 +1,81 @@
+package dbproject.model;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Secondary index mapping each value of a column to the sorted positions of
+ * the rows that hold it
+ */
+class HashIndex implements ColumnIndex {
+    // HashMap allows a null key, but a sentinel keeps NULL handling explicit
+    private static final Object NULL_KEY = new Object();
+
+    private final DataType type;
+    private final Map<Object, IntList> positions;
+
+    HashIndex(DataType type) {
+        this.type = type;
+        this.positions = new HashMap<>();
+    }
+
+    @Override
+    public void rebuild(ColumnData column, int rowCount) {
+        positions.clear();
+        for (int row = 0; row < rowCount; row++) {
+            add(column.getValue(row), row);
+        }
+    }
+
+    @Override
+    public void add(Object value, int row) {
+        positions.computeIfAbsent(key(value), k -> new IntList()).insertSorted(row);
+    }
+
+    @Override
+    public void remove(Object value, int row) {
+        Object key = key(value);
+        IntList rows = positions.get(key);
+        if (rows != null) {
+            rows.removeSorted(row);
+            if (rows.isEmpty()) {
+                positions.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public void removeRows(int firstRow, int[] newPositions) {
+        Iterator<IntList> lists = positions.values().iterator();
+        while (lists.hasNext()) {
+            IntList list = lists.next();
+            list.remap(firstRow, newPositions);
+            if (list.isEmpty()) {
+                lists.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the positions of the rows equal to the given search value, or
+     * null if there are none
+     */
+    IntList lookup(String searchValue) {
+        Object value = RowPredicate.parseSearchValue(searchValue, type);
+        if (value == RowPredicate.NO_VALUE) {
+            return null;
+        }
+        return positions.get(key(value));
+    }
+
+    @Override
+    public long estimateBytes(int rowCount) {
+        // Map entry, key and list object per distinct value plus one int per row
+        return 64L * positions.size() + 4L * rowCount;
+    }
+
+    private static Object key(Object value) {
+        return value == null ? NULL_KEY : value;
+    }
+}
@@ -0,0 +1,202 @@
+package dbproject.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Equi-join of two tables using a hash table built on the smaller side.
+ * Rows are emitted in the same order as a nested loop over the left table
+ * and then the right table would produce, and NULL never matches anything.
+ * When both join columns are dictionary-encoded, rows are bucketed by code
+ * and matched by comparing codes instead of hashing strings.
+ */
+class HashJoin {
+    private HashJoin() {
+    }
+
+    /**
+     * Appends the joined rows of left and right to result, whose columns must be
+     * the columns of left followed by the columns of right
+     */
+    static void join(Table left, int leftColumn, Table right, int rightColumn, Table result) {
+        join(left, leftColumn, right, rightColumn, result, right.getRowCount() <= left.getRowCount());
+    }
+
+    /**
+     * Appends the joined rows of left and right to result, building the hash
+     * table on the right table if buildRight is set and on the left one
+     * otherwise; the rows come out in the same order either way
+     */
+    static void join(Table left, int leftColumn, Table right, int rightColumn, Table result, boolean buildRight) {
+        if (buildRight) {
+            buildRightProbeLeft(left, leftColumn, right, rightColumn, result);
+        } else {
+            buildLeftProbeRight(left, leftColumn, right, rightColumn, result);
+        }
+    }
+
+    /**
+     * Counts the rows joining left and right would produce, without creating them
+     */
+    static long count(Table left, int leftColumn, Table right, int rightColumn) {
+        boolean buildRight = right.getRowCount() <= left.getRowCount();
+        Table build = buildRight ? right : left;
+        Table probe = buildRight ? left : right;
+        ColumnData buildColumn = build.getColumnData(buildRight ? rightColumn : leftColumn);
+        Matcher matcher = matcher(buildColumn, build.getRowCount(),
+            probe.getColumnData(buildRight ? leftColumn : rightColumn));
+        long count = 0;
+        for (int row = 0; row < probe.getRowCount(); row++) {
+            IntList matches = matcher.matches(row);
+            if (matches != null) {
+                count += matches.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Builds on the right table and probes with the left one, which gives
+     * nested loop order directly
+     */
+    private static void buildRightProbeLeft(Table left, int leftColumn, Table right, int rightColumn, Table result) {
+        Matcher matcher = matcher(right.getColumnData(rightColumn), right.getRowCount(), left.getColumnData(leftColumn));
+
+        for (int leftRow = 0; leftRow < left.getRowCount(); leftRow++) {
+            IntList matches = matcher.matches(leftRow);
+            if (matches == null) {
+                continue;
+            }
+            for (int i = 0; i < matches.size(); i++) {
+                result.appendJoinedRow(left, leftRow, right, matches.get(i));
+            }
+        }
+    }
+
+    /**
+     * Builds on the left table and probes with the right one. The matches are
+     * bucketed per left row with a counting pass so the output still follows
+     * nested loop order without sorting.
+     */
+    private static void buildLeftProbeRight(Table left, int leftColumn, Table right, int rightColumn, Table result) {
+        Matcher matcher = matcher(left.getColumnData(leftColumn), left.getRowCount(), right.getColumnData(rightColumn));
+        int leftRows = left.getRowCount();
+        int rightRows = right.getRowCount();
+
+        // First pass: number of matches for every left row
+        int[] offsets = new int[leftRows + 1];
+        for (int rightRow = 0; rightRow < rightRows; rightRow++) {
+            IntList matches = matcher.matches(rightRow);
+            if (matches != null) {
+                for (int i = 0; i < matches.size(); i++) {
+                    offsets[matches.get(i) + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < leftRows; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        // Second pass: place the right rows into each left row's bucket in order
+        int[] rightMatches = new int[offsets[leftRows]];
+        int[] next = new int[leftRows];
+        System.arraycopy(offsets, 0, next, 0, leftRows);
+        for (int rightRow = 0; rightRow < rightRows; rightRow++) {
+            IntList matches = matcher.matches(rightRow);
+            if (matches != null) {
+                for (int i = 0; i < matches.size(); i++) {
+                    rightMatches[next[matches.get(i)]++] = rightRow;
+                }
+            }
+        }
+
+        for (int leftRow = 0; leftRow < leftRows; leftRow++) {
+            for (int i = offsets[leftRow]; i < offsets[leftRow + 1]; i++) {
+                result.appendJoinedRow(left, leftRow, right, rightMatches[i]);
+            }
+        }
+    }
+
+    /**
+     * Indexes the build column for lookups with the rows of the probe column
+     */
+    private static Matcher matcher(ColumnData build, int buildRows, ColumnData probe) {
+        if (build instanceof DictionaryColumnData && probe instanceof DictionaryColumnData) {
+            return new CodeMatcher((DictionaryColumnData) build, buildRows, (DictionaryColumnData) probe);
+        }
+        return new ValueMatcher(build, buildRows, probe);
+    }
+
+    /**
+     * Finds the build rows whose key equals the key of a probe row
+     */
+    private abstract static class Matcher {
+        /**
+         * Returns the matching build rows in ascending order, or null if there are none
+         */
+        abstract IntList matches(int probeRow);
+    }
+
+    /**
+     * Hash table from every non-NULL key value to the build rows holding it
+     */
+    private static class ValueMatcher extends Matcher {
+        private final Map<Object, IntList> hashTable;
+        private final ColumnData probe;
+
+        ValueMatcher(ColumnData build, int buildRows, ColumnData probe) {
+            this.hashTable = new HashMap<>();
+            this.probe = probe;
+            for (int row = 0; row < buildRows; row++) {
+                Object key = build.getValue(row);
+                if (key != null) {
+                    hashTable.computeIfAbsent(key, k -> new IntList()).add(row);
+                }
+            }
+        }
+
+        @Override
+        IntList matches(int probeRow) {
+            Object key = probe.getValue(probeRow);
+            return key == null ? null : hashTable.get(key);
+        }
+    }
+
+    /**
+     * Build rows bucketed by dictionary code. Each probe dictionary value is
+     * translated to a build code once, so probing is two array lookups.
+     */
+    private static class CodeMatcher extends Matcher {
+        private final IntList[] buckets;
+        private final int[] probeToBuild;
+        private final DictionaryColumnData probe;
+
+        CodeMatcher(DictionaryColumnData build, int buildRows, DictionaryColumnData probe) {
+            this.buckets = new IntList[build.getDictionarySize()];
+            this.probe = probe;
+            for (int row = 0; row < buildRows; row++) {
+                int code = build.getCode(row);
+                if (code != DictionaryColumnData.NO_CODE) {
+                    if (buckets[code] == null) {
+                        buckets[code] = new IntList();
+                    }
+                    buckets[code].add(row);
+                }
+            }
+            this.probeToBuild = new int[probe.getDictionarySize()];
+            for (int code = 0; code < probeToBuild.length; code++) {
+                probeToBuild[code] = build.codeOf(probe.decode(code));
+            }
+        }
+
+        @Override
+        IntList matches(int probeRow) {
+            int code = probe.getCode(probeRow);
+            if (code == DictionaryColumnData.NO_CODE) {
+                return null;
+            }
+            int buildCode = probeToBuild[code];
+            return buildCode == DictionaryColumnData.NO_CODE ? null : buckets[buildCode];
+        }
+    }
+}
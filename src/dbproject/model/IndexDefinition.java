@@ -0,0 +1,58 @@
+package dbproject.model;
+
+/**
+ * An index the catalog keeps on a column of a table. Indexes live only in
+ * memory, so they are built again from their definitions whenever the table
+ * is loaded. In the catalog file a definition is written as "column n,HASH"
+ * or "column n,SORTED".
+ */
+public class IndexDefinition {
+    private final int columnIndex;
+    private final boolean sorted;
+
+    IndexDefinition(int columnIndex, boolean sorted) {
+        this.columnIndex = columnIndex;
+        this.sorted = sorted;
+    }
+
+    /**
+     * Parses a definition as written by toString
+     */
+    static IndexDefinition parse(String definition) {
+        String[] parts = definition.split(",");
+        if (parts.length != 2 || !(parts[1].equals("HASH") || parts[1].equals("SORTED"))) {
+            throw new IllegalArgumentException("Invalid index definition: " + definition);
+        }
+        return new IndexDefinition(Integer.parseInt(parts[0]), parts[1].equals("SORTED"));
+    }
+
+    /**
+     * Builds the index on a table
+     */
+    void createOn(Table table) {
+        if (sorted) {
+            table.createSortedIndex(columnIndex);
+        } else {
+            table.createIndex(columnIndex);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof IndexDefinition)) {
+            return false;
+        }
+        IndexDefinition other = (IndexDefinition) obj;
+        return columnIndex == other.columnIndex && sorted == other.sorted;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * columnIndex + (sorted ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return columnIndex + "," + (sorted ? "SORTED" : "HASH");
+    }
+}
@@ -0,0 +1,124 @@
+package dbproject.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Storage for an INTEGER column backed by chunks of int arrays
+ */
+class IntColumnData extends NumericColumnData {
+    private int[][] chunks;
+
+    IntColumnData() {
+        this.chunks = new int[0][];
+    }
+
+    IntColumnData(int[][] chunks, BitSet nulls, int size) {
+        super(nulls, size);
+        this.chunks = chunks;
+        buildZones();
+    }
+
+    private IntColumnData(IntColumnData source, BitSet nulls, int size) {
+        super(source, nulls, size);
+        this.chunks = source.chunks.clone();
+    }
+
+    @Override
+    DataType getType() {
+        return DataType.INTEGER;
+    }
+
+    int getInt(int row) {
+        return chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the chunk holding a row, where the row is at offsetInChunk;
+     * callers only read it
+     */
+    int[] getChunk(int row) {
+        return chunks[row >>> CHUNK_SHIFT];
+    }
+
+    @Override
+    double getDouble(int row) {
+        return chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    @Override
+    protected void checkValue(Object value) {
+        if (value != null && !(value instanceof Integer)) {
+            throw new IllegalArgumentException("Value is not an integer: " + value);
+        }
+    }
+
+    @Override
+    protected Object getNonNullValue(int row) {
+        return getInt(row);
+    }
+
+    @Override
+    protected String formatNonNull(int row) {
+        return Integer.toString(getInt(row));
+    }
+
+    @Override
+    protected void store(int row, Object value) {
+        chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK] = value == null ? 0 : (Integer) value;
+    }
+
+    @Override
+    protected void copyValue(ColumnData source, int from, int to) {
+        chunks[to >>> CHUNK_SHIFT][to & CHUNK_MASK] = ((IntColumnData) source).getInt(from);
+    }
+
+    @Override
+    protected void copyRange(ColumnData source, int from, int to, int count) {
+        IntColumnData ints = (IntColumnData) source;
+        while (count > 0) {
+            int length = Math.min(count, CHUNK_SIZE - Math.max(from & CHUNK_MASK, to & CHUNK_MASK));
+            System.arraycopy(ints.getChunk(from), from & CHUNK_MASK, getChunk(to), to & CHUNK_MASK, length);
+            from += length;
+            to += length;
+            count -= length;
+        }
+    }
+
+    @Override
+    protected void move(int from, int to) {
+        chunks[to >>> CHUNK_SHIFT][to & CHUNK_MASK] = getInt(from);
+    }
+
+    @Override
+    protected void clear(int from, int to) {
+        for (int row = from; row < to; row++) {
+            chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK] = 0;
+        }
+    }
+
+    @Override
+    protected void resizeChunk(int chunk, int length) {
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunk + 1);
+            chunks[chunk] = new int[length];
+        } else {
+            chunks[chunk] = Arrays.copyOf(chunks[chunk], length);
+        }
+    }
+
+    @Override
+    protected ColumnData share(BitSet nulls, int size) {
+        return new IntColumnData(this, nulls, size);
+    }
+
+    @Override
+    protected void copyChunk(int chunk) {
+        chunks[chunk] = chunks[chunk].clone();
+    }
+
+    @Override
+    protected long estimateValueBytes() {
+        return 4L * capacity() + zones.estimateBytes();
+    }
+}
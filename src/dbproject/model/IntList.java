@@ -0,0 +1,117 @@
+package dbproject.model;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, used for lists of row positions
+ */
+class IntList {
+    private int[] values;
+    private int size;
+
+    IntList() {
+        this(4);
+    }
+
+    IntList(int capacity) {
+        this.values = new int[Math.max(capacity, 1)];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Appends all values of another list
+     */
+    void addAll(IntList other) {
+        addAll(other, other.size);
+    }
+
+    /**
+     * Appends up to count values from the start of another list
+     */
+    void addAll(IntList other, int count) {
+        int added = Math.min(Math.max(count, 0), other.size);
+        if (size + added > values.length) {
+            values = Arrays.copyOf(values, Math.max(size + added, size + (size >> 1) + 1));
+        }
+        System.arraycopy(other.values, 0, values, size, added);
+        size += added;
+    }
+
+    /**
+     * Inserts a value into a list kept in ascending order
+     */
+    void insertSorted(int value) {
+        if (size == 0 || values[size - 1] < value) {
+            add(value);
+            return;
+        }
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return;
+        }
+        index = -index - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * Removes a value from a list kept in ascending order
+     */
+    void removeSorted(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Maps the positions from firstRow on in a list kept in ascending order
+     * to newPositions[position - firstRow], dropping the ones mapped to -1.
+     * The mapping must keep the order, as deleting rows does.
+     */
+    void remap(int firstRow, int[] newPositions) {
+        int index = Arrays.binarySearch(values, 0, size, firstRow);
+        int target = index >= 0 ? index : -index - 1;
+        for (int i = target; i < size; i++) {
+            int newPosition = newPositions[values[i] - firstRow];
+            if (newPosition >= 0) {
+                values[target++] = newPosition;
+            }
+        }
+        size = target;
+    }
+
+    int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
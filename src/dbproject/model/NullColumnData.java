@@ -0,0 +1,76 @@
+package dbproject.model;
+
+import java.util.BitSet;
+
+/**
+ * Storage for a column of type NULL, which can only hold NULL values
+ */
+class NullColumnData extends ColumnData {
+    NullColumnData() {
+    }
+
+    NullColumnData(int size) {
+        super(new BitSet(), size);
+        nulls.set(0, size);
+    }
+
+    @Override
+    DataType getType() {
+        return DataType.NULL;
+    }
+
+    @Override
+    protected void checkValue(Object value) {
+        if (value != null) {
+            throw new IllegalArgumentException("Column of type NULL can only hold NULL values");
+        }
+    }
+
+    @Override
+    protected Object getNonNullValue(int row) {
+        return null;
+    }
+
+    @Override
+    protected String formatNonNull(int row) {
+        return "NULL";
+    }
+
+    @Override
+    protected void store(int row, Object value) {
+    }
+
+    @Override
+    protected void copyValue(ColumnData source, int from, int to) {
+    }
+
+    @Override
+    protected void copyRange(ColumnData source, int from, int to, int count) {
+    }
+
+    @Override
+    protected void move(int from, int to) {
+    }
+
+    @Override
+    protected void clear(int from, int to) {
+    }
+
+    @Override
+    protected void resizeChunk(int chunk, int length) {
+    }
+
+    @Override
+    protected ColumnData share(BitSet nulls, int size) {
+        return new NullColumnData(size);
+    }
+
+    @Override
+    protected void copyChunk(int chunk) {
+    }
+
+    @Override
+    protected long estimateValueBytes() {
+        return 0;
+    }
+}
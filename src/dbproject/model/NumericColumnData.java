@@ -0,0 +1,90 @@
+package dbproject.model;
+
+import java.util.BitSet;
+
+/**
+ * Column storage for numeric types, giving unboxed access to the values and
+ * keeping a zone map of per-block statistics up to date with every change
+ */
+abstract class NumericColumnData extends ColumnData {
+    protected final ZoneMap zones;
+
+    protected NumericColumnData() {
+        this.zones = new ZoneMap();
+    }
+
+    /**
+     * Wraps values that were already loaded; the subclass builds the zone
+     * map with buildZones once its values are in place
+     */
+    protected NumericColumnData(BitSet nulls, int size) {
+        super(nulls, size);
+        this.zones = new ZoneMap();
+    }
+
+    /**
+     * Creates a snapshot over the chunks of another column with a copy of its zone map
+     */
+    protected NumericColumnData(NumericColumnData source, BitSet nulls, int size) {
+        super(source, nulls, size);
+        this.zones = source.zones.copy();
+    }
+
+    /**
+     * Returns the value at a non-NULL row as a double
+     */
+    abstract double getDouble(int row);
+
+    /**
+     * Returns the per-block statistics of the column
+     */
+    ZoneMap getZoneMap() {
+        return zones;
+    }
+
+    protected void buildZones() {
+        zones.extend(this, 0, size);
+    }
+
+    @Override
+    void append(Object value) {
+        super.append(value);
+        zones.extend(this, size - 1, size);
+    }
+
+    @Override
+    void appendNulls(int count) {
+        super.appendNulls(count);
+        zones.extend(this, size - count, size);
+    }
+
+    @Override
+    void appendFrom(ColumnData source, int row) {
+        super.appendFrom(source, row);
+        zones.extend(this, size - 1, size);
+    }
+
+    @Override
+    void appendAll(ColumnData source) {
+        int from = size;
+        super.appendAll(source);
+        zones.extend(this, from, size);
+    }
+
+    @Override
+    void set(int row, Object value) {
+        boolean wasNull = isNull(row);
+        double oldValue = wasNull ? 0 : getDouble(row);
+        super.set(row, value);
+        zones.update(this, row, wasNull, oldValue);
+    }
+
+    @Override
+    void removeRows(BitSet removed) {
+        int first = removed.nextSetBit(0);
+        super.removeRows(removed);
+        if (first >= 0) {
+            zones.rebuildFrom(this, first);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package dbproject.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Loads large text table files by parsing the data section in parallel.
+ *
+ * The data section (after the "---" line) is split into byte ranges that
+ * start right after a line feed. Each range is mapped, decoded and parsed on
+ * its own core into column arrays with the same parseCsvLine/Cell.parseCell
+ * rules as the serial loader, and the ranges are then concatenated in file
+ * order. The serial loader reads with readLine, which ends a line at every
+ * line break even inside quotes, so splitting at any line feed keeps the
+ * two loaders in agreement.
+ */
+class ParallelTableLoader {
+    static final long PARALLEL_THRESHOLD = 8L << 20;
+
+    private static final int CHUNK_SIZE = 8 << 20;
+    private static final int HEADER_LIMIT = 1 << 20;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    private ParallelTableLoader() {
+    }
+
+    /**
+     * Checks whether a file is big enough, and the machine has enough cores,
+     * for a parallel load to pay off
+     */
+    static boolean isWorthwhile(String filePath) {
+        return Runtime.getRuntime().availableProcessors() > 1
+            && new File(filePath).length() >= PARALLEL_THRESHOLD;
+    }
+
+    /**
+     * Loads a table, or returns null if the header can't be located and the
+     * serial loader should be used instead
+     */
+    static Table load(String tableName, String filePath) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            Table header = new Table(tableName);
+            long dataStart = readHeader(channel, fileSize, charset, header);
+            if (dataStart < 0) {
+                return null;
+            }
+
+            List<Long> boundaries = splitDataSection(channel, dataStart, fileSize);
+            List<Column> columns = header.getColumns();
+
+            List<List<ColumnData>> chunks;
+            try {
+                chunks = IntStream.range(0, boundaries.size() - 1)
+                    .parallel()
+                    .mapToObj(i -> parseChunk(channel, boundaries.get(i), boundaries.get(i + 1), columns, charset))
+                    .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Stitch the chunks together in file order
+            int rowCount = 0;
+            for (List<ColumnData> chunk : chunks) {
+                rowCount += chunk.isEmpty() ? 0 : chunk.get(0).size();
+            }
+            List<ColumnData> data = new ArrayList<>(columns.size());
+            for (int i = 0; i < columns.size(); i++) {
+                ColumnData columnData = ColumnData.create(columns.get(i).getType(), header.isDictionaryEncoded(i));
+                columnData.ensureCapacity(rowCount);
+                for (List<ColumnData> chunk : chunks) {
+                    columnData.appendAll(chunk.get(i));
+                }
+                data.add(columnData);
+            }
+            return new Table(tableName, columns, data, rowCount);
+        }
+    }
+
+    /**
+     * Reads the column definitions into the given table and returns the file
+     * offset of the first data line, or -1 if no "---" line was found
+     */
+    private static long readHeader(FileChannel channel, long fileSize, Charset charset, Table table) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(HEADER_LIMIT, fileSize));
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // keep reading until the buffer is full
+        }
+        int lineStart = 0;
+        for (int i = 0; i < buffer.position(); i++) {
+            if (buffer.get(i) != '\n') {
+                continue;
+            }
+            int lineEnd = i > lineStart && buffer.get(i - 1) == '\r' ? i - 1 : i;
+            String line = new String(buffer.array(), lineStart, lineEnd - lineStart, charset);
+            lineStart = i + 1;
+            if (line.equals("---")) {
+                return lineStart;
+            }
+            FileHandler.addColumnDefinition(table, line);
+        }
+        return -1;
+    }
+
+    /**
+     * Splits the data section into ranges of roughly CHUNK_SIZE bytes, each
+     * starting at the beginning of a line
+     */
+    private static List<Long> splitDataSection(FileChannel channel, long dataStart, long fileSize) throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(dataStart);
+        long position = dataStart;
+        while (position < fileSize) {
+            position = nextLineStart(channel, position + CHUNK_SIZE, fileSize);
+            boundaries.add(position);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Returns the offset just after the first line feed at or after position - 1
+     */
+    private static long nextLineStart(FileChannel channel, long position, long fileSize) throws IOException {
+        if (position >= fileSize) {
+            return fileSize;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long offset = position - 1;
+        while (offset < fileSize) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Parses the lines of one byte range into fresh column arrays
+     */
+    private static List<ColumnData> parseChunk(FileChannel channel, long start, long end,
+                                               List<Column> columns, Charset charset) {
+        String text;
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            text = charset.decode(mapped).toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int columnCount = columns.size();
+        List<ColumnData> data = new ArrayList<>(columnCount);
+        for (Column column : columns) {
+            data.add(ColumnData.create(column.getType()));
+        }
+        Object[] values = new Object[columnCount];
+
+        int lineStart = 0;
+        int length = text.length();
+        while (lineStart < length) {
+            // Line breaks follow BufferedReader.readLine: \n, \r or \r\n
+            int lineEnd = lineStart;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n' && text.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            String line = text.substring(lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+            if (lineEnd < length - 1 && text.charAt(lineEnd) == '\r' && text.charAt(lineEnd + 1) == '\n') {
+                lineStart++;
+            }
+
+            if (line.equals("---")) {
+                continue;
+            }
+            List<String> cellValues = FileHandler.parseCsvLine(line);
+            if (cellValues.size() != columnCount) {
+                continue;
+            }
+            for (int i = 0; i < columnCount; i++) {
+                values[i] = Cell.parseCell(cellValues.get(i), columns.get(i).getType()).getValue();
+            }
+            for (int i = 0; i < columnCount; i++) {
+                data.get(i).append(values[i]);
+            }
+        }
+        return data;
+    }
+}
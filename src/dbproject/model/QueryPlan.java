@@ -0,0 +1,186 @@
+package dbproject.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The way the QueryPlanner chose to run one command, with the estimates
+ * behind the choice. A plan runs the command it was made for, and explain
+ * describes it next to the number of rows it actually produced.
+ */
+public abstract class QueryPlan {
+    private final String command;
+    private final String strategy;
+    private final double estimatedRows;
+    private final List<String> details;
+
+    QueryPlan(String command, String strategy, double estimatedRows, List<String> details) {
+        this.command = command;
+        this.strategy = strategy;
+        this.estimatedRows = estimatedRows;
+        this.details = details;
+    }
+
+    public double getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    /**
+     * Returns a cursor over the rows a select or range plan finds
+     */
+    public RowCursor cursor() {
+        throw new IllegalStateException("Plan doesn't produce rows: " + command);
+    }
+
+    /**
+     * Returns the number of rows a select, count or aggregate plan matches
+     */
+    public int count() {
+        throw new IllegalStateException("Plan doesn't count rows: " + command);
+    }
+
+    /**
+     * Returns the results of an aggregate plan, keyed by operation
+     */
+    public Map<String, Object> aggregate() {
+        throw new IllegalStateException("Plan doesn't aggregate: " + command);
+    }
+
+    /**
+     * Runs the plan and returns the number of rows it matches or produces
+     */
+    public abstract long countRows();
+
+    /**
+     * Describes the plan, its estimates and the number of rows it actually
+     * produced, one item per line
+     */
+    public String explain(long actualRows) {
+        String lineSeparator = System.lineSeparator();
+        StringBuilder explanation = new StringBuilder();
+        explanation.append("Plan for: ").append(command).append(lineSeparator);
+        explanation.append("  Strategy: ").append(strategy).append(lineSeparator);
+        for (String detail : details) {
+            explanation.append("  ").append(detail).append(lineSeparator);
+        }
+        explanation.append("  Estimated rows: ").append(Math.round(estimatedRows)).append(lineSeparator);
+        explanation.append("  Actual rows: ").append(actualRows);
+        return explanation.toString();
+    }
+
+    /**
+     * Equality search on one column for select, count or aggregate
+     */
+    static class Lookup extends QueryPlan {
+        private final Table table;
+        private final int columnIndex;
+        private final String value;
+        private final AccessPath path;
+        // Only set for aggregates
+        private final int targetColumnIndex;
+        private final List<String> operations;
+
+        Lookup(String command, Table table, int columnIndex, String value, int targetColumnIndex,
+               List<String> operations, AccessPath path, double estimatedRows, List<String> details) {
+            super(command, path.toString(), estimatedRows, details);
+            this.table = table;
+            this.columnIndex = columnIndex;
+            this.value = value;
+            this.targetColumnIndex = targetColumnIndex;
+            this.operations = operations;
+            this.path = path;
+        }
+
+        @Override
+        public RowCursor cursor() {
+            if (operations != null) {
+                return super.cursor();
+            }
+            return table.cursor(columnIndex, value, path);
+        }
+
+        @Override
+        public int count() {
+            return table.count(columnIndex, value, path);
+        }
+
+        @Override
+        public Map<String, Object> aggregate() {
+            if (operations == null) {
+                return super.aggregate();
+            }
+            return table.aggregate(columnIndex, value, targetColumnIndex, operations, path);
+        }
+
+        @Override
+        public long countRows() {
+            return count();
+        }
+    }
+
+    /**
+     * Range search on one column, ordered by its value
+     */
+    static class Range extends QueryPlan {
+        private final Table table;
+        private final int columnIndex;
+        private final String low;
+        private final String high;
+        private final AccessPath path;
+
+        Range(String command, Table table, int columnIndex, String low, String high, AccessPath path,
+              double estimatedRows, List<String> details) {
+            super(command, path.toString(), estimatedRows, details);
+            this.table = table;
+            this.columnIndex = columnIndex;
+            this.low = low;
+            this.high = high;
+            this.path = path;
+        }
+
+        @Override
+        public RowCursor cursor() {
+            return table.rangeCursor(columnIndex, low, high, path);
+        }
+
+        @Override
+        public long countRows() {
+            // Range cursors find every row up front, so their size is known
+            return cursor().getKnownSize();
+        }
+    }
+
+    /**
+     * Equi-join of two tables, building the hash table on one side
+     */
+    static class Join extends QueryPlan {
+        private final Table left;
+        private final int leftColumnIndex;
+        private final Table right;
+        private final int rightColumnIndex;
+        private final boolean buildRight;
+
+        Join(String command, Table left, int leftColumnIndex, Table right, int rightColumnIndex, boolean buildRight,
+             double estimatedRows, List<String> details) {
+            super(command, "hash join, building on the " + (buildRight ? "right" : "left") + " table",
+                estimatedRows, details);
+            this.left = left;
+            this.leftColumnIndex = leftColumnIndex;
+            this.right = right;
+            this.rightColumnIndex = rightColumnIndex;
+            this.buildRight = buildRight;
+        }
+
+        boolean isBuildRight() {
+            return buildRight;
+        }
+
+        /**
+         * Counts the joined rows from snapshots of the tables, without creating a table
+         */
+        @Override
+        public long countRows() {
+            return HashJoin.count(left.snapshot(), leftColumnIndex, right.snapshot(), rightColumnIndex);
+        }
+    }
+}
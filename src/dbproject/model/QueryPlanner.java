@@ -0,0 +1,231 @@
+package dbproject.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Chooses how commands find their rows. Each access path or join strategy
+ * that could run a command gets a cost from column statistics and the zone
+ * maps, in units of testing one row in a scan, and the cheapest one wins.
+ *
+ * Statistics are gathered per column the first time a plan needs them and
+ * kept until the table has grown or shrunk by a tenth, or had more than
+ * STALE_CHANGES changes, since they were gathered.
+ */
+public class QueryPlanner {
+    private static final double INDEX_LOOKUP_COST = 20;
+    // Each row found through an index is copied out and then read out of order
+    private static final double INDEX_ROW_COST = 2;
+    // Per row and halving step of a comparison sort
+    private static final double SORT_ROW_COST = 0.5;
+    private static final double BUILD_ROW_COST = 3;
+    private static final double PROBE_ROW_COST = 1;
+    private static final int STALE_CHANGES = 100;
+
+    // Tables compare by identity, and statistics go away with their table
+    private final Map<Table, Map<Integer, Gathered>> statistics;
+
+    public QueryPlanner() {
+        this.statistics = new WeakHashMap<>();
+    }
+
+    /**
+     * Plans selecting the rows that match a value in a column
+     */
+    public QueryPlan planSelect(Table table, int columnIndex, String value) {
+        String command = "select from " + table.getName() + " where " + columnName(table, columnIndex) + " = " + value;
+        return planLookup(command, table, columnIndex, value, -1, null, true);
+    }
+
+    /**
+     * Plans counting the rows that match a value in a column
+     */
+    public QueryPlan planCount(Table table, int columnIndex, String value) {
+        String command = "count " + table.getName() + " where " + columnName(table, columnIndex) + " = " + value;
+        return planLookup(command, table, columnIndex, value, -1, null, false);
+    }
+
+    /**
+     * Plans aggregating a column over the rows that match a value in another
+     */
+    public QueryPlan planAggregate(Table table, int searchColumnIndex, String searchValue, int targetColumnIndex,
+                                   List<String> operations) {
+        String command = "aggregate " + String.join(", ", operations) + " of " + columnName(table, targetColumnIndex)
+            + " in " + table.getName() + " where " + columnName(table, searchColumnIndex) + " = " + searchValue;
+        return planLookup(command, table, searchColumnIndex, searchValue, targetColumnIndex, operations, true);
+    }
+
+    /**
+     * Plans selecting the rows whose value in a column lies between low and
+     * high, ordered by that value
+     */
+    public QueryPlan planRange(Table table, int columnIndex, String low, String high) {
+        String command = "select from " + table.getName() + " where " + columnName(table, columnIndex)
+            + " between " + low + " and " + high;
+        if (!isValidColumn(table, columnIndex)) {
+            return new QueryPlan.Range(command, table, columnIndex, low, high, AccessPath.SCAN, 0, new ArrayList<>());
+        }
+        Table snapshot = table.snapshot();
+        DataType type = snapshot.getColumns().get(columnIndex).getType();
+        Object lowValue = Table.parseBound(low, type);
+        Object highValue = Table.parseBound(high, type);
+        ColumnStatistics columnStatistics = statistics(table, columnIndex);
+        double estimate = columnStatistics.rangeFraction(lowValue, highValue) * snapshot.getRowCount();
+
+        Map<AccessPath, Double> costs = new LinkedHashMap<>();
+        if (table.hasSortedIndex(columnIndex)) {
+            costs.put(AccessPath.SORTED_INDEX, INDEX_LOOKUP_COST + estimate * INDEX_ROW_COST);
+        }
+        RowPredicate predicate = RowPredicate.between(snapshot.getColumnData(columnIndex), lowValue, highValue);
+        costs.put(AccessPath.SCAN, predicate.rowsToTest(snapshot.getRowCount())
+            + estimate * log2(estimate + 1) * SORT_ROW_COST);
+        AccessPath path = cheapest(costs);
+        return new QueryPlan.Range(command, table, columnIndex, low, high, path, estimate,
+            details(costs, table, columnIndex, columnStatistics));
+    }
+
+    /**
+     * Plans joining two tables on a column of each
+     */
+    public QueryPlan planJoin(Table left, int leftColumnIndex, Table right, int rightColumnIndex) {
+        String command = "join " + left.getName() + "." + columnName(left, leftColumnIndex) + " = "
+            + right.getName() + "." + columnName(right, rightColumnIndex);
+        double leftRows = left.getRowCount();
+        double rightRows = right.getRowCount();
+        if (!isValidColumn(left, leftColumnIndex) || !isValidColumn(right, rightColumnIndex)) {
+            return new QueryPlan.Join(command, left, leftColumnIndex, right, rightColumnIndex,
+                rightRows <= leftRows, 0, new ArrayList<>());
+        }
+        ColumnStatistics leftStatistics = statistics(left, leftColumnIndex);
+        ColumnStatistics rightStatistics = statistics(right, rightColumnIndex);
+
+        double estimate = 0;
+        if (left.getColumns().get(leftColumnIndex).getType() == right.getColumns().get(rightColumnIndex).getType()) {
+            estimate = leftStatistics.joinFraction(rightStatistics) * leftRows * rightRows;
+        }
+
+        // Building on the left probes the right table twice and buckets the matches per left row
+        double buildRightCost = BUILD_ROW_COST * rightRows + PROBE_ROW_COST * leftRows;
+        double buildLeftCost = BUILD_ROW_COST * leftRows + 2 * PROBE_ROW_COST * rightRows + leftRows;
+        List<String> details = new ArrayList<>();
+        details.add(String.format("Candidates: build on right cost %.0f, build on left cost %.0f",
+            buildRightCost, buildLeftCost));
+        details.add("Statistics: " + left.getName() + "." + columnName(left, leftColumnIndex) + ": "
+            + Math.round(leftRows) + " rows, " + leftStatistics.describe());
+        details.add("Statistics: " + right.getName() + "." + columnName(right, rightColumnIndex) + ": "
+            + Math.round(rightRows) + " rows, " + rightStatistics.describe());
+        return new QueryPlan.Join(command, left, leftColumnIndex, right, rightColumnIndex,
+            buildRightCost <= buildLeftCost, estimate, details);
+    }
+
+    private QueryPlan planLookup(String command, Table table, int columnIndex, String value, int targetColumnIndex,
+                                 List<String> operations, boolean readsRows) {
+        if (!isValidColumn(table, columnIndex)) {
+            return new QueryPlan.Lookup(command, table, columnIndex, value, targetColumnIndex, operations,
+                AccessPath.SCAN, 0, new ArrayList<>());
+        }
+        Table snapshot = table.snapshot();
+        ColumnStatistics columnStatistics = statistics(table, columnIndex);
+        Object searchValue = RowPredicate.parseSearchValue(value, snapshot.getColumns().get(columnIndex).getType());
+        double estimate = searchValue == RowPredicate.NO_VALUE
+            ? 0 : columnStatistics.equalsFraction(searchValue) * snapshot.getRowCount();
+
+        // Counting through an index only takes the size of the row list
+        double rowCost = readsRows ? estimate * INDEX_ROW_COST : 0;
+        Map<AccessPath, Double> costs = new LinkedHashMap<>();
+        if (table.hasIndex(columnIndex)) {
+            costs.put(AccessPath.HASH_INDEX, INDEX_LOOKUP_COST + rowCost);
+        }
+        if (table.hasSortedIndex(columnIndex)) {
+            costs.put(AccessPath.SORTED_INDEX, INDEX_LOOKUP_COST + log2(columnStatistics.getDistinct() + 1) + rowCost);
+        }
+        RowPredicate predicate = RowPredicate.equalTo(snapshot.getColumnData(columnIndex), value);
+        costs.put(AccessPath.SCAN, (double) predicate.rowsToTest(snapshot.getRowCount()));
+        AccessPath path = cheapest(costs);
+        return new QueryPlan.Lookup(command, table, columnIndex, value, targetColumnIndex, operations, path, estimate,
+            details(costs, table, columnIndex, columnStatistics));
+    }
+
+    /**
+     * Returns the statistics of a column, gathering them again if the table
+     * changed too much since they were gathered
+     */
+    ColumnStatistics statistics(Table table, int columnIndex) {
+        long version = table.getVersion();
+        int rowCount = table.getRowCount();
+        synchronized (statistics) {
+            Gathered gathered = statistics.computeIfAbsent(table, t -> new HashMap<>()).get(columnIndex);
+            if (gathered != null && !gathered.isStale(version, rowCount)) {
+                return gathered.statistics;
+            }
+        }
+        Table snapshot = table.snapshot();
+        ColumnStatistics columnStatistics =
+            ColumnStatistics.gather(snapshot.getColumnData(columnIndex), snapshot.getRowCount());
+        synchronized (statistics) {
+            statistics.computeIfAbsent(table, t -> new HashMap<>())
+                .put(columnIndex, new Gathered(snapshot.getVersion(), columnStatistics));
+        }
+        return columnStatistics;
+    }
+
+    private static AccessPath cheapest(Map<AccessPath, Double> costs) {
+        AccessPath best = null;
+        for (Map.Entry<AccessPath, Double> entry : costs.entrySet()) {
+            if (best == null || entry.getValue() < costs.get(best)) {
+                best = entry.getKey();
+            }
+        }
+        return best;
+    }
+
+    private static List<String> details(Map<AccessPath, Double> costs, Table table, int columnIndex,
+                                        ColumnStatistics columnStatistics) {
+        List<String> candidates = new ArrayList<>();
+        for (Map.Entry<AccessPath, Double> entry : costs.entrySet()) {
+            candidates.add(String.format("%s cost %.0f", entry.getKey(), entry.getValue()));
+        }
+        List<String> details = new ArrayList<>();
+        details.add("Candidates: " + String.join(", ", candidates));
+        details.add("Statistics: " + table.getName() + "." + columnName(table, columnIndex) + ": "
+            + columnStatistics.getRowCount() + " rows, " + columnStatistics.describe());
+        return details;
+    }
+
+    private static String columnName(Table table, int columnIndex) {
+        return isValidColumn(table, columnIndex) ? table.getColumns().get(columnIndex).getName() : "column " + columnIndex;
+    }
+
+    private static boolean isValidColumn(Table table, int columnIndex) {
+        return columnIndex >= 0 && columnIndex < table.getColumnCount();
+    }
+
+    private static double log2(double value) {
+        return Math.log(Math.max(value, 1)) / Math.log(2);
+    }
+
+    /**
+     * Statistics of a column with the table version they were gathered at
+     */
+    private static class Gathered {
+        private final long version;
+        private final ColumnStatistics statistics;
+
+        Gathered(long version, ColumnStatistics statistics) {
+            this.version = version;
+            this.statistics = statistics;
+        }
+
+        boolean isStale(long currentVersion, int currentRowCount) {
+            if (currentVersion == version) {
+                return false;
+            }
+            int rowCount = statistics.getRowCount();
+            return Math.abs(currentRowCount - rowCount) * 10L > rowCount || currentVersion - version > STALE_CHANGES;
+        }
+    }
+}
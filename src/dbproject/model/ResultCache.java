@@ -0,0 +1,268 @@
+package dbproject.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded cache of the results of select, count and aggregate commands.
+ * A result is cached under the normalized command and the table it ran on,
+ * and is only reused while the table is the same object at the same
+ * version, so any change to the table makes its results stale. The
+ * DatabaseManager also drops a table's results as soon as it changes, is
+ * renamed, imported, loaded or dropped from memory, so stale results don't
+ * take up room.
+ *
+ * When the estimated size of the results exceeds the capacity, the least
+ * recently used ones are dropped. Select results keep the positions of the
+ * matching rows and the snapshot they came from, and are only cached once
+ * the rows were read to the end, so paged selects stay lazy; only the positions count
+ * towards the capacity, as the snapshot shares the table's storage until
+ * the table changes and the result is dropped.
+ */
+public class ResultCache {
+    private static final long MEGABYTE = 1024L * 1024L;
+    // Map entries, key object and bookkeeping per cached result
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final LinkedHashMap<String, Entry> entries;
+    private final Map<String, Set<String>> keysByTable;
+    private volatile long capacityBytes;
+    private long memoryBytes;
+    private long hits;
+    private long misses;
+
+    public ResultCache() {
+        this(Long.getLong("dbproject.resultCacheMb", 16) * MEGABYTE);
+    }
+
+    public ResultCache(long capacityBytes) {
+        // Access order makes iteration start at the least recently used result
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.keysByTable = new HashMap<>();
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Hands a cursor over the result of a select command to the reader: one
+     * over the cached matches, or else the query's own cursor. The query's
+     * matches are cached afterwards only if the reader read them to the end,
+     * so a reader that stops early never makes the query find the rest.
+     */
+    public void select(Table table, String command, Supplier<RowCursor> query, Consumer<RowCursor> reader) {
+        long version = table.getVersion();
+        CachedRows cached = lookup(table, command, version);
+        if (cached != null) {
+            reader.accept(cached.cursor());
+            return;
+        }
+        RowCursor cursor = query.get();
+        reader.accept(cursor);
+        if (cursor.getKnownSize() >= 0) {
+            CachedRows rows = new CachedRows(cursor);
+            put(table, command, version, rows, rows.estimateBytes());
+        }
+    }
+
+    /**
+     * Returns the result of a count command, running the query unless the
+     * result is cached already
+     */
+    public int count(Table table, String command, IntSupplier query) {
+        return get(table, command, query::getAsInt, count -> Integer.BYTES);
+    }
+
+    /**
+     * Returns the results of an aggregate command, running the query unless
+     * the results are cached already; the returned map can't be modified
+     */
+    public Map<String, Object> aggregate(Table table, String command, Supplier<Map<String, Object>> query) {
+        return get(table, command, () -> Collections.unmodifiableMap(new LinkedHashMap<>(query.get())),
+            results -> 64L * (results.size() + 1));
+    }
+
+    /**
+     * Looks a result up, or runs the query outside the lock and caches its
+     * result if the table didn't change meanwhile and the result fits
+     */
+    private <T> T get(Table table, String command, Supplier<T> query, ToLongFunction<T> size) {
+        long version = table.getVersion();
+        T cached = lookup(table, command, version);
+        if (cached != null) {
+            return cached;
+        }
+        T result = query.get();
+        put(table, command, version, result, size.applyAsLong(result));
+        return result;
+    }
+
+    /**
+     * Returns the result cached for the table at the given version, or null
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized <T> T lookup(Table table, String command, long version) {
+        Entry entry = entries.get(table.getName() + '\n' + command);
+        if (entry != null && entry.table == table && entry.version == version) {
+            hits++;
+            return (T) entry.result;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Caches the result of a query run at the given version of the table,
+     * unless the table changed since or the result doesn't fit
+     */
+    private synchronized void put(Table table, String command, long version, Object result, long resultBytes) {
+        String tableName = table.getName();
+        String key = tableName + '\n' + command;
+        long bytes = ENTRY_OVERHEAD + 2L * key.length() + resultBytes;
+        if (table.getVersion() == version && bytes <= capacityBytes) {
+            remove(key);
+            entries.put(key, new Entry(tableName, table, version, result, bytes));
+            keysByTable.computeIfAbsent(tableName, name -> new HashSet<>()).add(key);
+            memoryBytes += bytes;
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * Drops the cached results of a table
+     */
+    public synchronized void invalidate(String tableName) {
+        Set<String> keys = keysByTable.remove(tableName);
+        if (keys != null) {
+            for (String key : keys) {
+                Entry entry = entries.remove(key);
+                memoryBytes -= entry.bytes;
+            }
+        }
+    }
+
+    /**
+     * Drops all cached results
+     */
+    public synchronized void clear() {
+        entries.clear();
+        keysByTable.clear();
+        memoryBytes = 0;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            memoryBytes -= entry.bytes;
+            Set<String> keys = keysByTable.get(entry.tableName);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByTable.remove(entry.tableName);
+            }
+        }
+    }
+
+    /**
+     * Drops least recently used results until the rest fit the capacity
+     */
+    private void evictIfNeeded() {
+        Iterator<String> keys = entries.keySet().iterator();
+        while (memoryBytes > capacityBytes && keys.hasNext()) {
+            String key = keys.next();
+            Entry entry = entries.get(key);
+            keys.remove();
+            memoryBytes -= entry.bytes;
+            Set<String> tableKeys = keysByTable.get(entry.tableName);
+            tableKeys.remove(key);
+            if (tableKeys.isEmpty()) {
+                keysByTable.remove(entry.tableName);
+            }
+        }
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    /**
+     * Sets the capacity, dropping results until the rest fit
+     */
+    public synchronized void setCapacityBytes(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Cache capacity can't be negative");
+        }
+        capacityBytes = bytes;
+        evictIfNeeded();
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the share of lookups that found a cached result, or 0 before the first lookup
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private static class Entry {
+        private final String tableName;
+        private final Table table;
+        private final long version;
+        private final Object result;
+        private final long bytes;
+
+        Entry(String tableName, Table table, long version, Object result, long bytes) {
+            this.tableName = tableName;
+            this.table = table;
+            this.version = version;
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * All matches of a select, taken from a cursor that was read to the end;
+     * a new cursor is made for every use since cursors aren't shared between
+     * sessions
+     */
+    private static class CachedRows {
+        private final Table snapshot;
+        // Null when every row of the snapshot matches
+        private final int[] positions;
+
+        CachedRows(RowCursor cursor) {
+            this.snapshot = cursor.getTable();
+            this.positions = cursor.findAll();
+        }
+
+        RowCursor cursor() {
+            return positions == null ? new RowCursor(snapshot) : new RowCursor(snapshot, positions);
+        }
+
+        long estimateBytes() {
+            return positions == null ? 0 : (long) Integer.BYTES * positions.length;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package dbproject.model;
+
+import java.util.List;
+
+/**
+ * Lazy view of the rows of a table that match a search, in table order.
+ * Rows are only tested when a caller asks for a match at or past the ones
+ * found so far, and only the positions of the matches are kept; a Row is
+ * materialized each time one is read. The cursor reads a snapshot, so it
+ * isn't affected by later changes to the table.
+ */
+public class RowCursor {
+    private final Table table;
+    private final RowPredicate predicate;
+    private final IntList positions;
+    private int nextRow;
+
+    /**
+     * Creates a cursor over all rows of a snapshot
+     */
+    RowCursor(Table table) {
+        this.table = table;
+        this.predicate = null;
+        this.positions = null;
+    }
+
+    /**
+     * Creates a cursor over the rows of a snapshot accepted by the predicate
+     */
+    RowCursor(Table table, RowPredicate predicate) {
+        this.table = table;
+        this.predicate = predicate;
+        this.positions = new IntList(16);
+    }
+
+    /**
+     * Creates a cursor over rows of a snapshot whose positions are already known
+     */
+    RowCursor(Table table, int[] positions) {
+        this.table = table;
+        this.predicate = RowPredicate.NONE;
+        this.positions = new IntList(Math.max(positions.length, 1));
+        for (int position : positions) {
+            this.positions.add(position);
+        }
+        this.nextRow = table.getRowCount();
+    }
+
+    public List<Column> getColumns() {
+        return table.getColumns();
+    }
+
+    /**
+     * Returns the snapshot the cursor reads
+     */
+    Table getTable() {
+        return table;
+    }
+
+    /**
+     * Returns the positions of every match, or null if the cursor is over all
+     * rows. A cursor that hasn't tested any row yet scans block by block, as
+     * counts do, instead of row by row.
+     */
+    int[] findAll() {
+        if (positions == null) {
+            return null;
+        }
+        if (nextRow == 0) {
+            return predicate.findRows(table.getRowCount());
+        }
+        hasRow(Integer.MAX_VALUE);
+        return positions.toArray();
+    }
+
+    /**
+     * Checks whether there is a match at the given index, testing rows until
+     * it is found or the table ends
+     */
+    public boolean hasRow(int index) {
+        int rowCount = table.getRowCount();
+        if (positions == null) {
+            return index < rowCount;
+        }
+        while (positions.size() <= index && nextRow < rowCount) {
+            // Skip whole blocks the column statistics rule out
+            if ((nextRow & (ZoneMap.BLOCK_SIZE - 1)) == 0 && !predicate.mayMatchBlock(ZoneMap.blockOf(nextRow))) {
+                nextRow = ZoneMap.nextBlockStart(nextRow);
+                continue;
+            }
+            if (predicate.matches(nextRow)) {
+                positions.add(nextRow);
+            }
+            nextRow++;
+        }
+        return index < positions.size();
+    }
+
+    /**
+     * Materializes the match at the given index
+     */
+    public Row getRow(int index) {
+        return table.getRow(position(index));
+    }
+
+    /**
+     * Formats one value of the match at the given index the same way
+     * Cell.toString does, without materializing the row
+     */
+    public String format(int index, int columnIndex) {
+        return table.getColumnData(columnIndex).format(position(index));
+    }
+
+    /**
+     * Returns the number of matches if every row has been tested, or -1 if
+     * there may be more matches than found so far
+     */
+    public int getKnownSize() {
+        if (positions == null) {
+            return table.getRowCount();
+        }
+        return nextRow >= table.getRowCount() ? positions.size() : -1;
+    }
+
+    /**
+     * Returns the table row of the match at the given index
+     */
+    private int position(int index) {
+        if (index < 0 || !hasRow(index)) {
+            throw new IndexOutOfBoundsException("Invalid result index: " + index);
+        }
+        return positions == null ? index : positions.get(index);
+    }
+}
@@ -0,0 +1,896 @@
+package dbproject.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A search condition compiled against the storage of a column.
+ * The search value is parsed once with Cell.parseCell and then compared
+ * with the stored values natively, without formatting any cell.
+ * Predicates on numeric columns also answer per block of ZoneMap.BLOCK_SIZE
+ * rows from the column's zone map, so scans can skip blocks or take them
+ * whole without looking at the rows. When VectorSupport is enabled, equality
+ * tests on INTEGER, FLOAT and dictionary-encoded columns also evaluate a
+ * range of rows at once into a selection mask.
+ *
+ * Predicates combine with and, or and not into a tree of predicate objects,
+ * which is how WhereExpression compiles compound conditions.
+ */
+abstract class RowPredicate {
+    /**
+     * Predicate used when the search value can't occur in the column
+     */
+    static final RowPredicate NONE = new RowPredicate() {
+        @Override
+        boolean matches(int row) {
+            return false;
+        }
+
+        @Override
+        boolean mayMatchBlock(int block) {
+            return false;
+        }
+    };
+
+    /**
+     * Predicate that accepts every row
+     */
+    static final RowPredicate ALL = new RowPredicate() {
+        @Override
+        boolean matches(int row) {
+            return true;
+        }
+
+        @Override
+        boolean matchesBlock(int block) {
+            return true;
+        }
+    };
+
+    /**
+     * Marker for a search value that doesn't parse as the column type
+     */
+    static final Object NO_VALUE = new Object();
+
+    abstract boolean matches(int row);
+
+    /**
+     * Checks whether any row of a block may match
+     */
+    boolean mayMatchBlock(int block) {
+        return true;
+    }
+
+    /**
+     * Checks whether every row of a block is known to match
+     */
+    boolean matchesBlock(int block) {
+        return false;
+    }
+
+    /**
+     * Evaluates the predicate on the rows from start to end, which lie in one
+     * block, into a selection mask where bit i stands for row start + i.
+     * Returns false, leaving the mask undefined, if the predicate has no
+     * vectorized form; only called when VectorSupport.ENABLED is set.
+     */
+    boolean select(int start, int end, long[] selection) {
+        return false;
+    }
+
+    /**
+     * Returns a selection mask large enough for a block, or null if scans
+     * can't use select
+     */
+    static long[] newSelection() {
+        return VectorSupport.ENABLED ? new long[ZoneMap.BLOCK_SIZE / Long.SIZE] : null;
+    }
+
+    /**
+     * Counts the matching rows among the first rowCount rows
+     */
+    int count(int rowCount) {
+        int count = 0;
+        long[] selection = newSelection();
+        for (int start = 0; start < rowCount; start = ZoneMap.nextBlockStart(start)) {
+            int block = ZoneMap.blockOf(start);
+            int end = Math.min(ZoneMap.nextBlockStart(start), rowCount);
+            if (matchesBlock(block)) {
+                count += end - start;
+            } else if (!mayMatchBlock(block)) {
+                continue;
+            } else if (selection != null && select(start, end, selection)) {
+                count += VectorScan.countSelected(selection, end - start);
+            } else {
+                for (int row = start; row < end; row++) {
+                    if (matches(row)) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the rows among the first rowCount rows that a scan has to test,
+     * leaving out the blocks mayMatchBlock rules out
+     */
+    int rowsToTest(int rowCount) {
+        int rows = 0;
+        for (int start = 0; start < rowCount; start = ZoneMap.nextBlockStart(start)) {
+            if (mayMatchBlock(ZoneMap.blockOf(start))) {
+                rows += Math.min(ZoneMap.nextBlockStart(start), rowCount) - start;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the positions of the matching rows among the first rowCount rows
+     */
+    int[] findRows(int rowCount) {
+        IntList positions = new IntList(16);
+        long[] selection = newSelection();
+        for (int start = 0; start < rowCount; start = ZoneMap.nextBlockStart(start)) {
+            int block = ZoneMap.blockOf(start);
+            if (!mayMatchBlock(block)) {
+                continue;
+            }
+            boolean wholeBlock = matchesBlock(block);
+            int end = Math.min(ZoneMap.nextBlockStart(start), rowCount);
+            if (!wholeBlock && selection != null && select(start, end, selection)) {
+                addSelected(positions, start, end, selection);
+                continue;
+            }
+            for (int row = start; row < end; row++) {
+                if (wholeBlock || matches(row)) {
+                    positions.add(row);
+                }
+            }
+        }
+        return positions.toArray();
+    }
+
+    /**
+     * Appends the positions of the rows a selection mask marks
+     */
+    private static void addSelected(IntList positions, int start, int end, long[] selection) {
+        for (int w = 0, words = (end - start + 63) >>> 6; w < words; w++) {
+            for (long bits = selection[w]; bits != 0; bits &= bits - 1) {
+                int row = start + (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (row < end) {
+                    positions.add(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles an equality test against a search value written the same way
+     * as values in commands and table files
+     */
+    static RowPredicate equalTo(ColumnData column, String searchValue) {
+        Object value = parseSearchValue(searchValue, column.getType());
+        return value == NO_VALUE ? NONE : equalTo(column, value);
+    }
+
+    /**
+     * Compiles an equality test against a value of the column type; null
+     * stands for NULL
+     */
+    static RowPredicate equalTo(ColumnData column, Object value) {
+        if (value == null) {
+            return new IsNull(column);
+        }
+        switch (column.getType()) {
+            case INTEGER:
+                return new IntEquals((IntColumnData) column, (Integer) value);
+            case FLOAT:
+                return new FloatEquals((FloatColumnData) column, (Double) value);
+            case STRING:
+                if (column instanceof DictionaryColumnData) {
+                    return codeEquals((DictionaryColumnData) column, (String) value);
+                }
+                return new StringEquals((StringColumnData) column, (String) value);
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Compiles a test for non-NULL rows
+     */
+    static RowPredicate notNull(ColumnData column) {
+        return not(new IsNull(column));
+    }
+
+    /**
+     * Compiles a comparison with a non-NULL value of the column type, in the
+     * order sorted indexes use. NULL rows match no comparison, not even
+     * NOT_EQUAL.
+     */
+    static RowPredicate compare(ColumnData column, WhereExpression.Operator operator, Object value) {
+        if (operator == WhereExpression.Operator.EQUAL) {
+            return equalTo(column, value);
+        }
+        if (operator == WhereExpression.Operator.NOT_EQUAL) {
+            List<RowPredicate> parts = new ArrayList<>();
+            parts.add(notNull(column));
+            parts.add(not(equalTo(column, value)));
+            return and(parts);
+        }
+        switch (column.getType()) {
+            case INTEGER:
+                return intCompare((IntColumnData) column, operator, (Integer) value);
+            case FLOAT:
+                return floatCompare((FloatColumnData) column, operator, (Double) value);
+            case STRING:
+                return stringCompare(column, operator, (String) value);
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Turns an ordering comparison on an INTEGER column into a range of ints
+     */
+    private static RowPredicate intCompare(IntColumnData column, WhereExpression.Operator operator, int value) {
+        switch (operator) {
+            case LESS:
+                return value == Integer.MIN_VALUE ? NONE : new IntBetween(column, Integer.MIN_VALUE, value - 1);
+            case LESS_OR_EQUAL:
+                return new IntBetween(column, Integer.MIN_VALUE, value);
+            case GREATER:
+                return value == Integer.MAX_VALUE ? NONE : new IntBetween(column, value + 1, Integer.MAX_VALUE);
+            default:
+                return new IntBetween(column, value, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Turns an ordering comparison on a FLOAT column into a range in the
+     * order of Double.compare, which runs from negative infinity up to NaN
+     */
+    private static RowPredicate floatCompare(FloatColumnData column, WhereExpression.Operator operator, double value) {
+        switch (operator) {
+            case LESS:
+                return value == Double.NEGATIVE_INFINITY
+                    ? NONE : new FloatBetween(column, Double.NEGATIVE_INFINITY, below(value));
+            case LESS_OR_EQUAL:
+                return new FloatBetween(column, Double.NEGATIVE_INFINITY, value);
+            case GREATER:
+                return Double.isNaN(value) ? NONE : new FloatBetween(column, above(value), Double.NaN);
+            default:
+                return new FloatBetween(column, value, Double.NaN);
+        }
+    }
+
+    /**
+     * Returns the double just below a value in the order of Double.compare,
+     * where -0.0 lies between the negative numbers and 0.0
+     */
+    private static double below(double value) {
+        if (Double.isNaN(value)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (value == 0.0) {
+            return Double.doubleToRawLongBits(value) == 0 ? -0.0 : -Double.MIN_VALUE;
+        }
+        return Math.nextDown(value);
+    }
+
+    /**
+     * Returns the double just above a value in the order of Double.compare
+     */
+    private static double above(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return Double.NaN;
+        }
+        if (value == 0.0) {
+            return Double.doubleToRawLongBits(value) == 0 ? Double.MIN_VALUE : 0.0;
+        }
+        return Math.nextUp(value);
+    }
+
+    /**
+     * Compiles an ordering comparison on a STRING column. On dictionary-encoded
+     * columns every dictionary value is compared once, so rows are matched by
+     * their code.
+     */
+    private static RowPredicate stringCompare(ColumnData column, WhereExpression.Operator operator, String value) {
+        StringCompare comparison = new StringCompare(column, operator, value);
+        if (!(column instanceof DictionaryColumnData)) {
+            return comparison;
+        }
+        DictionaryColumnData dictionaryColumn = (DictionaryColumnData) column;
+        boolean[] matchingCodes = new boolean[dictionaryColumn.getDictionarySize()];
+        boolean anyMatch = false;
+        for (int code = 0; code < matchingCodes.length; code++) {
+            matchingCodes[code] = comparison.accepts(dictionaryColumn.decode(code));
+            anyMatch |= matchingCodes[code];
+        }
+        return anyMatch ? new CodeIn(dictionaryColumn, matchingCodes) : NONE;
+    }
+
+    /**
+     * Combines predicates into one that matches the rows all of them match
+     */
+    static RowPredicate and(List<RowPredicate> predicates) {
+        List<RowPredicate> parts = new ArrayList<>();
+        for (RowPredicate predicate : predicates) {
+            if (predicate == NONE) {
+                return NONE;
+            }
+            if (predicate instanceof And) {
+                for (RowPredicate part : ((And) predicate).parts) {
+                    parts.add(part);
+                }
+            } else if (predicate != ALL) {
+                parts.add(predicate);
+            }
+        }
+        if (parts.isEmpty()) {
+            return ALL;
+        }
+        return parts.size() == 1 ? parts.get(0) : new And(parts.toArray(new RowPredicate[0]));
+    }
+
+    /**
+     * Combines predicates into one that matches the rows any of them matches
+     */
+    static RowPredicate or(List<RowPredicate> predicates) {
+        List<RowPredicate> parts = new ArrayList<>();
+        for (RowPredicate predicate : predicates) {
+            if (predicate == ALL) {
+                return ALL;
+            }
+            if (predicate instanceof Or) {
+                for (RowPredicate part : ((Or) predicate).parts) {
+                    parts.add(part);
+                }
+            } else if (predicate != NONE) {
+                parts.add(predicate);
+            }
+        }
+        if (parts.isEmpty()) {
+            return NONE;
+        }
+        return parts.size() == 1 ? parts.get(0) : new Or(parts.toArray(new RowPredicate[0]));
+    }
+
+    /**
+     * Returns a predicate that matches exactly the rows a predicate doesn't
+     */
+    static RowPredicate not(RowPredicate predicate) {
+        if (predicate == NONE) {
+            return ALL;
+        }
+        if (predicate == ALL) {
+            return NONE;
+        }
+        if (predicate instanceof Not) {
+            return ((Not) predicate).predicate;
+        }
+        return new Not(predicate);
+    }
+
+    /**
+     * Compiles a range test against non-NULL bounds of the column type, both
+     * included, in the order sorted indexes use
+     */
+    static RowPredicate between(ColumnData column, Object low, Object high) {
+        if (Table.compareValues(low, high) > 0) {
+            return NONE;
+        }
+        switch (column.getType()) {
+            case INTEGER:
+                return new IntBetween((IntColumnData) column, (Integer) low, (Integer) high);
+            case FLOAT:
+                return new FloatBetween((FloatColumnData) column, (Double) low, (Double) high);
+            case STRING:
+                return new StringBetween(column, (String) low, (String) high);
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Looks the search value up in the dictionary once, so rows are matched
+     * by comparing codes
+     */
+    private static RowPredicate codeEquals(DictionaryColumnData column, String value) {
+        int code = column.codeOf(value);
+        return code == DictionaryColumnData.NO_CODE ? NONE : new CodeEquals(column, code);
+    }
+
+    /**
+     * Parses a search value against a column type; returns NO_VALUE if it can't be parsed
+     */
+    static Object parseSearchValue(String searchValue, DataType type) {
+        try {
+            return Cell.parseCell(searchValue, type).getValue();
+        } catch (IllegalArgumentException e) {
+            // A value that isn't valid for the column type can't match any row
+            return NO_VALUE;
+        }
+    }
+
+    private static class IsNull extends RowPredicate {
+        private final ColumnData column;
+
+        IsNull(ColumnData column) {
+            this.column = column;
+        }
+
+        @Override
+        boolean matches(int row) {
+            return column.isNull(row);
+        }
+
+        @Override
+        boolean mayMatchBlock(int block) {
+            if (column instanceof NumericColumnData) {
+                return ((NumericColumnData) column).getZoneMap().getNullCount(block) > 0;
+            }
+            return true;
+        }
+
+        @Override
+        boolean matchesBlock(int block) {
+            if (column instanceof NumericColumnData) {
+                return ((NumericColumnData) column).getZoneMap().getNullCount(block) == blockRows(column, block);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Equality with a number, which skips blocks whose range can't hold it
+     */
+    private abstract static class NumberEquals extends RowPredicate {
+        private final ZoneMap zones;
+        private final double value;
+
+        NumberEquals(NumericColumnData column, double value) {
+            this.zones = column.getZoneMap();
+            this.value = value;
+        }
+
+        @Override
+        boolean mayMatchBlock(int block) {
+            return zones.mayContain(block, value);
+        }
+
+        @Override
+        boolean matchesBlock(int block) {
+            // Only a block without NULLs whose every value is the search value
+            return zones.getNullCount(block) == 0
+                && Double.compare(zones.getMin(block), value) == 0
+                && Double.compare(zones.getMax(block), value) == 0;
+        }
+    }
+
+    /**
+     * Range test on a number, which skips blocks whose range doesn't overlap it
+     */
+    private abstract static class NumberBetween extends RowPredicate {
+        private final ZoneMap zones;
+        private final double low;
+        private final double high;
+
+        NumberBetween(NumericColumnData column, double low, double high) {
+            this.zones = column.getZoneMap();
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        boolean mayMatchBlock(int block) {
+            return zones.mayOverlap(block, low, high);
+        }
+
+        @Override
+        boolean matchesBlock(int block) {
+            return zones.getNullCount(block) == 0
+                && Double.compare(zones.getMin(block), low) >= 0
+                && Double.compare(zones.getMax(block), high) <= 0;
+        }
+    }
+
+    /**
+     * Returns the number of rows of a column in a block; the last block may be partial
+     */
+    private static int blockRows(ColumnData column, int block) {
+        int start = block << ZoneMap.BLOCK_SHIFT;
+        return Math.min(ZoneMap.BLOCK_SIZE, column.size() - start);
+    }
+
+    private static class IntEquals extends NumberEquals {
+        private final IntColumnData column;
+        private final int value;
+
+        IntEquals(IntColumnData column, int value) {
+            super(column, value);
+            this.column = column;
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(int row) {
+            // NULL slots hold 0, so the bitmap is only consulted on a value match
+            return column.getInt(row) == value && !column.isNull(row);
+        }
+
+        @Override
+        boolean select(int start, int end, long[] selection) {
+            int offset = ColumnData.offsetInChunk(start);
+            VectorScan.selectEquals(column.getChunk(start), value, offset, offset + end - start, selection);
+            if (value == 0) {
+                column.clearNulls(start, end, selection);
+            }
+            return true;
+        }
+    }
+
+    private static class FloatEquals extends NumberEquals {
+        private final FloatColumnData column;
+        private final double value;
+
+        FloatEquals(FloatColumnData column, double value) {
+            super(column, value);
+            this.column = column;
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(int row) {
+            // Double.compare keeps NaN equal to itself and 0.0 distinct from -0.0
+            return Double.compare(column.getDouble(row), value) == 0 && !column.isNull(row);
+        }
+
+        @Override
+        boolean select(int start, int end, long[] selection) {
+            int offset = ColumnData.offsetInChunk(start);
+            VectorScan.selectEquals(column.getChunk(start), value, offset, offset + end - start, selection);
+            if (Double.compare(value, 0.0) == 0) {
+                column.clearNulls(start, end, selection);
+            }
+            return true;
+        }
+    }
+
+    private static class StringEquals extends RowPredicate {
+        private final StringColumnData column;
+        private final String value;
+
+        StringEquals(StringColumnData column, String value) {
+            this.column = column;
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(int row) {
+            // NULL slots hold null, which never equals the search value
+            return value.equals(column.getString(row));
+        }
+    }
+
+    private static class CodeEquals extends RowPredicate {
+        private final DictionaryColumnData column;
+        private final int code;
+
+        CodeEquals(DictionaryColumnData column, int code) {
+            this.column = column;
+            this.code = code;
+        }
+
+        @Override
+        boolean matches(int row) {
+            // NULL slots hold NO_CODE, which never equals a dictionary code
+            return column.getCode(row) == code;
+        }
+
+        @Override
+        boolean select(int start, int end, long[] selection) {
+            int offset = ColumnData.offsetInChunk(start);
+            VectorScan.selectEquals(column.getChunk(start), code, offset, offset + end - start, selection);
+            return true;
+        }
+    }
+
+    private static class IntBetween extends NumberBetween {
+        private final IntColumnData column;
+        private final int low;
+        private final int high;
+
+        IntBetween(IntColumnData column, int low, int high) {
+            super(column, low, high);
+            this.column = column;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        boolean matches(int row) {
+            int value = column.getInt(row);
+            return value >= low && value <= high && !column.isNull(row);
+        }
+    }
+
+    private static class FloatBetween extends NumberBetween {
+        private final FloatColumnData column;
+        private final double low;
+        private final double high;
+
+        FloatBetween(FloatColumnData column, double low, double high) {
+            super(column, low, high);
+            this.column = column;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        boolean matches(int row) {
+            double value = column.getDouble(row);
+            return Double.compare(value, low) >= 0 && Double.compare(value, high) <= 0 && !column.isNull(row);
+        }
+    }
+
+    private static class StringBetween extends RowPredicate {
+        private final ColumnData column;
+        private final String low;
+        private final String high;
+
+        StringBetween(ColumnData column, String low, String high) {
+            this.column = column;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        boolean matches(int row) {
+            Object value = column.getValue(row);
+            return value != null && low.compareTo((String) value) <= 0 && high.compareTo((String) value) >= 0;
+        }
+    }
+
+    private static class StringCompare extends RowPredicate {
+        private final ColumnData column;
+        private final String value;
+        // Whether values below, equal to and above the search value match
+        private final boolean acceptsLess;
+        private final boolean acceptsEqual;
+        private final boolean acceptsGreater;
+
+        StringCompare(ColumnData column, WhereExpression.Operator operator, String value) {
+            this.column = column;
+            this.value = value;
+            this.acceptsLess = operator == WhereExpression.Operator.LESS
+                || operator == WhereExpression.Operator.LESS_OR_EQUAL;
+            this.acceptsEqual = operator == WhereExpression.Operator.LESS_OR_EQUAL
+                || operator == WhereExpression.Operator.GREATER_OR_EQUAL;
+            this.acceptsGreater = operator == WhereExpression.Operator.GREATER
+                || operator == WhereExpression.Operator.GREATER_OR_EQUAL;
+        }
+
+        @Override
+        boolean matches(int row) {
+            Object rowValue = column.getValue(row);
+            return rowValue != null && accepts((String) rowValue);
+        }
+
+        boolean accepts(String rowValue) {
+            int comparison = rowValue.compareTo(value);
+            return comparison < 0 ? acceptsLess : comparison == 0 ? acceptsEqual : acceptsGreater;
+        }
+    }
+
+    /**
+     * Matches the rows of a dictionary-encoded column whose code is marked
+     */
+    private static class CodeIn extends RowPredicate {
+        private final DictionaryColumnData column;
+        private final boolean[] matchingCodes;
+
+        CodeIn(DictionaryColumnData column, boolean[] matchingCodes) {
+            this.column = column;
+            this.matchingCodes = matchingCodes;
+        }
+
+        @Override
+        boolean matches(int row) {
+            int code = column.getCode(row);
+            return code != DictionaryColumnData.NO_CODE && matchingCodes[code];
+        }
+    }
+
+    /**
+     * Conjunction, testing its parts in order until one fails. When a part can
+     * select, the other parts only test the rows it selected.
+     */
+    private static class And extends RowPredicate {
+        private final RowPredicate[] parts;
+
+        And(RowPredicate[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        boolean matches(int row) {
+            for (RowPredicate part : parts) {
+                if (!part.matches(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean mayMatchBlock(int block) {
+            for (RowPredicate part : parts) {
+                if (!part.mayMatchBlock(block)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean matchesBlock(int block) {
+            for (RowPredicate part : parts) {
+                if (!part.matchesBlock(block)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean select(int start, int end, long[] selection) {
+            for (int selecting = 0; selecting < parts.length; selecting++) {
+                if (!parts[selecting].select(start, end, selection)) {
+                    continue;
+                }
+                for (int w = 0, words = (end - start + 63) >>> 6; w < words; w++) {
+                    long bits = selection[w];
+                    for (long remaining = bits; remaining != 0; remaining &= remaining - 1) {
+                        int bit = Long.numberOfTrailingZeros(remaining);
+                        int row = start + (w << 6) + bit;
+                        if (row >= end || !matchesOthers(row, selecting)) {
+                            bits &= ~(1L << bit);
+                        }
+                    }
+                    selection[w] = bits;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private boolean matchesOthers(int row, int skipped) {
+            for (int i = 0; i < parts.length; i++) {
+                if (i != skipped && !parts[i].matches(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Disjunction, testing its parts in order until one matches. When a part
+     * can select, the other parts only test the rows it didn't select.
+     */
+    private static class Or extends RowPredicate {
+        private final RowPredicate[] parts;
+
+        Or(RowPredicate[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        boolean matches(int row) {
+            for (RowPredicate part : parts) {
+                if (part.matches(row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean mayMatchBlock(int block) {
+            for (RowPredicate part : parts) {
+                if (part.mayMatchBlock(block)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean matchesBlock(int block) {
+            for (RowPredicate part : parts) {
+                if (part.matchesBlock(block)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean select(int start, int end, long[] selection) {
+            for (int selecting = 0; selecting < parts.length; selecting++) {
+                if (!parts[selecting].select(start, end, selection)) {
+                    continue;
+                }
+                for (int w = 0, words = (end - start + 63) >>> 6; w < words; w++) {
+                    long bits = selection[w];
+                    for (long remaining = ~bits; remaining != 0; remaining &= remaining - 1) {
+                        int bit = Long.numberOfTrailingZeros(remaining);
+                        int row = start + (w << 6) + bit;
+                        if (row >= end) {
+                            break;
+                        }
+                        if (matchesOthers(row, selecting)) {
+                            bits |= 1L << bit;
+                        }
+                    }
+                    selection[w] = bits;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private boolean matchesOthers(int row, int skipped) {
+            for (int i = 0; i < parts.length; i++) {
+                if (i != skipped && parts[i].matches(row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Not extends RowPredicate {
+        private final RowPredicate predicate;
+
+        Not(RowPredicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        boolean matches(int row) {
+            return !predicate.matches(row);
+        }
+
+        @Override
+        boolean mayMatchBlock(int block) {
+            return !predicate.matchesBlock(block);
+        }
+
+        @Override
+        boolean matchesBlock(int block) {
+            return !predicate.mayMatchBlock(block);
+        }
+
+        @Override
+        boolean select(int start, int end, long[] selection) {
+            if (!predicate.select(start, end, selection)) {
+                return false;
+            }
+            int rows = end - start;
+            int words = (rows + 63) >>> 6;
+            for (int w = 0; w < words; w++) {
+                selection[w] = ~selection[w];
+            }
+            // Rows past the end must stay unselected
+            if ((rows & 63) != 0) {
+                selection[words - 1] &= (1L << rows) - 1;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package dbproject.model;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Secondary index keeping the values of a column in sorted order, each with
+ * the sorted positions of the rows that hold it, for range lookups and
+ * ordered output. Values are ordered the way Comparable orders them, which
+ * for FLOAT columns is Double.compare order; NULL rows are kept apart and
+ * come after every value.
+ */
+class SortedIndex implements ColumnIndex {
+    private final NavigableMap<Object, IntList> positions;
+    private final IntList nullRows;
+
+    SortedIndex() {
+        this.positions = new TreeMap<>();
+        this.nullRows = new IntList();
+    }
+
+    @Override
+    public void rebuild(ColumnData column, int rowCount) {
+        positions.clear();
+        nullRows.clear();
+        for (int row = 0; row < rowCount; row++) {
+            add(column.getValue(row), row);
+        }
+    }
+
+    @Override
+    public void add(Object value, int row) {
+        rowsOf(value, true).insertSorted(row);
+    }
+
+    @Override
+    public void remove(Object value, int row) {
+        IntList rows = rowsOf(value, false);
+        if (rows != null) {
+            rows.removeSorted(row);
+            if (rows.isEmpty() && value != null) {
+                positions.remove(value);
+            }
+        }
+    }
+
+    @Override
+    public void removeRows(int firstRow, int[] newPositions) {
+        Iterator<IntList> lists = positions.values().iterator();
+        while (lists.hasNext()) {
+            IntList list = lists.next();
+            list.remap(firstRow, newPositions);
+            if (list.isEmpty()) {
+                lists.remove();
+            }
+        }
+        nullRows.remap(firstRow, newPositions);
+    }
+
+    /**
+     * Returns the sorted positions of the rows holding a value, or null if
+     * there are none; null looks up the NULL rows
+     */
+    IntList lookup(Object value) {
+        IntList rows = rowsOf(value, false);
+        return rows == null || rows.isEmpty() ? null : rows;
+    }
+
+    /**
+     * Returns the positions of the rows whose value lies between low and high,
+     * both included, ordered by value and then by position
+     */
+    int[] range(Object low, Object high) {
+        IntList result = new IntList(16);
+        for (IntList rows : positions.subMap(low, true, high, true).values()) {
+            result.addAll(rows);
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Returns the positions of up to limit rows ordered by value, with rows of
+     * equal value in table order and NULL rows last
+     */
+    int[] ordered(boolean descending, int limit) {
+        IntList result = new IntList(16);
+        NavigableMap<Object, IntList> values = descending ? positions.descendingMap() : positions;
+        for (Map.Entry<Object, IntList> entry : values.entrySet()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.addAll(entry.getValue(), limit - result.size());
+        }
+        result.addAll(nullRows, limit - result.size());
+        return result.toArray();
+    }
+
+    @Override
+    public long estimateBytes(int rowCount) {
+        // Tree entry, key and list object per distinct value plus one int per row
+        return 80L * positions.size() + 4L * rowCount;
+    }
+
+    private IntList rowsOf(Object value, boolean create) {
+        if (value == null) {
+            return nullRows;
+        }
+        return create ? positions.computeIfAbsent(value, k -> new IntList()) : positions.get(value);
+    }
+}
@@ -0,0 +1,135 @@
+package dbproject.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Storage for a STRING column backed by chunks of String arrays
+ */
+class StringColumnData extends ColumnData {
+    private static final int SAMPLE_SIZE = 256;
+    // String object plus its byte array header
+    private static final int STRING_OVERHEAD = 40;
+
+    private String[][] chunks;
+
+    StringColumnData() {
+        this.chunks = new String[0][];
+    }
+
+    StringColumnData(String[][] chunks, BitSet nulls, int size) {
+        super(nulls, size);
+        this.chunks = chunks;
+    }
+
+    private StringColumnData(StringColumnData source, BitSet nulls, int size) {
+        super(source, nulls, size);
+        this.chunks = source.chunks.clone();
+    }
+
+    @Override
+    DataType getType() {
+        return DataType.STRING;
+    }
+
+    String getString(int row) {
+        return chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    @Override
+    protected void checkValue(Object value) {
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Value is not a string: " + value);
+        }
+    }
+
+    @Override
+    protected Object getNonNullValue(int row) {
+        return getString(row);
+    }
+
+    @Override
+    protected String formatNonNull(int row) {
+        // Escape quotes and backslashes, same as Cell.toString
+        String str = getString(row).replace("\\", "\\\\").replace("\"", "\\\"");
+        return "\"" + str + "\"";
+    }
+
+    @Override
+    protected void store(int row, Object value) {
+        chunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK] = (String) value;
+    }
+
+    @Override
+    protected void copyValue(ColumnData source, int from, int to) {
+        store(to, source.getNonNullValue(from));
+    }
+
+    @Override
+    protected void copyRange(ColumnData source, int from, int to, int count) {
+        if (source instanceof StringColumnData) {
+            StringColumnData strings = (StringColumnData) source;
+            while (count > 0) {
+                int length = Math.min(count, CHUNK_SIZE - Math.max(from & CHUNK_MASK, to & CHUNK_MASK));
+                System.arraycopy(strings.chunks[from >>> CHUNK_SHIFT], from & CHUNK_MASK,
+                    chunks[to >>> CHUNK_SHIFT], to & CHUNK_MASK, length);
+                from += length;
+                to += length;
+                count -= length;
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                store(to + i, source.getValue(from + i));
+            }
+        }
+    }
+
+    @Override
+    protected void move(int from, int to) {
+        store(to, getString(from));
+    }
+
+    @Override
+    protected void clear(int from, int to) {
+        for (int row = from; row < to; row++) {
+            store(row, null);
+        }
+    }
+
+    @Override
+    protected void resizeChunk(int chunk, int length) {
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunk + 1);
+            chunks[chunk] = new String[length];
+        } else {
+            chunks[chunk] = Arrays.copyOf(chunks[chunk], length);
+        }
+    }
+
+    @Override
+    protected ColumnData share(BitSet nulls, int size) {
+        return new StringColumnData(this, nulls, size);
+    }
+
+    @Override
+    protected void copyChunk(int chunk) {
+        chunks[chunk] = chunks[chunk].clone();
+    }
+
+    @Override
+    protected long estimateValueBytes() {
+        // Sample evenly spaced rows instead of walking every string
+        long sampledBytes = 0;
+        int sampled = 0;
+        int step = Math.max(1, size / SAMPLE_SIZE);
+        for (int row = 0; row < size; row += step) {
+            String value = getString(row);
+            if (value != null) {
+                sampledBytes += STRING_OVERHEAD + value.length();
+                sampled++;
+            }
+        }
+        long stringBytes = sampled == 0 ? 0 : sampledBytes * (size - nulls.cardinality()) / sampled;
+        return 8L * capacity() + stringBytes;
+    }
+}
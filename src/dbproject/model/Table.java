@@ -1,187 +1,1042 @@
 package dbproject.model;
 
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Represents a database table
+ * Represents a database table.
+ * Data is stored column by column; Row and Cell objects are only created
+ * when rows are handed out through getRow, getRows or select.
+ *
+ * A read/write lock guards the data: lookups and scans share the read lock
+ * and run in parallel, while changes take the write lock. The column list is
+ * copy-on-write and the counters are volatile, so they can be read without it.
+ *
+ * Scans don't hold the lock while they run: they take a snapshot, a
+ * read-only table that shares the column storage as of that moment, and
+ * scan it while writers carry on. Snapshots that are no longer referenced
+ * are reclaimed by the garbage collector.
  */
 public class Table {
-    private String name;
+    private volatile String name;
     private List<Column> columns;
-    private List<Row> rows;
-    
+    private List<ColumnData> data;
+    private Map<Integer, HashIndex> indexes;
+    private Map<Integer, SortedIndex> sortedIndexes;
+    private volatile int rowCount;
+    private volatile long version;
+    private volatile long rewriteVersion;
+    private final boolean readOnly;
+    private final Lock readLock;
+    private final Lock writeLock;
+
     public Table(String name) {
+        this(name, false);
+    }
+
+    private Table(String name, boolean readOnly) {
         this.name = name;
-        this.columns = new ArrayList<>();
-        this.rows = new ArrayList<>();
+        this.readOnly = readOnly;
+        this.columns = new CopyOnWriteArrayList<>();
+        this.data = new ArrayList<>();
+        this.indexes = new HashMap<>();
+        this.sortedIndexes = new HashMap<>();
+        this.rowCount = 0;
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    /**
+     * Creates a table around column data that was already loaded
+     */
+    Table(String name, List<Column> columns, List<ColumnData> data, int rowCount) {
+        this(name);
+        for (ColumnData columnData : data) {
+            if (columnData.size() != rowCount) {
+                throw new IllegalArgumentException("Column size doesn't match the number of rows");
+            }
+        }
+        this.columns.addAll(columns);
+        this.data.addAll(data);
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Creates a read-only snapshot of a table over snapshots of its column data
+     */
+    private Table(Table source, List<ColumnData> data) {
+        this(source.name, true);
+        this.columns.addAll(source.columns);
+        this.data.addAll(data);
+        this.rowCount = source.rowCount;
+        this.version = source.version;
+        this.rewriteVersion = source.rewriteVersion;
+    }
+
+    /**
+     * Returns a read-only copy of the table as it is now. The copy shares the
+     * column storage, so taking it is cheap, and later changes to this table
+     * don't show up in it. Indexes aren't carried over.
+     */
+    public Table snapshot() {
+        if (readOnly) {
+            return this;
+        }
+        readLock.lock();
+        try {
+            List<ColumnData> snapshotData = new ArrayList<>(data.size());
+            for (ColumnData columnData : data) {
+                snapshotData.add(columnData.snapshot());
+            }
+            return new Table(this, snapshotData);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
     }
-    
+
     public String getName() {
         return name;
     }
-    
+
     public void setName(String name) {
         this.name = name;
     }
-    
+
     /**
      * Adds a new column to the table
      */
     public void addColumn(String name, DataType type) {
-        columns.add(new Column(name, type));
-        // Add NULL cells to all existing rows for this new column
-        for (Row row : rows) {
-            row.addNullCell();
+        checkWritable();
+        writeLock.lock();
+        try {
+            columns.add(new Column(name, type));
+            version++;
+            rewriteVersion++;
+            // Existing rows get NULL for the new column; indexes are keyed by
+            // column position, so the ones on existing columns stay valid
+            ColumnData columnData = ColumnData.create(type);
+            columnData.appendNulls(rowCount);
+            data.add(columnData);
+        } finally {
+            writeLock.unlock();
         }
     }
-    
+
     /**
      * Adds a new row to the table
      */
     public void addRow(Row row) {
-        if (row.size() != columns.size()) {
-            throw new IllegalArgumentException("Row size doesn't match the number of columns");
+        checkWritable();
+        writeLock.lock();
+        try {
+            if (row.size() != columns.size()) {
+                throw new IllegalArgumentException("Row size doesn't match the number of columns");
+            }
+            // Validate every value first so a bad row doesn't leave the columns out of step
+            for (int i = 0; i < row.size(); i++) {
+                data.get(i).checkValue(row.getCell(i).getValue());
+            }
+            for (int i = 0; i < row.size(); i++) {
+                data.get(i).append(row.getCell(i).getValue());
+            }
+            indexRows(rowCount, rowCount + 1);
+            rowCount++;
+            version++;
+        } finally {
+            writeLock.unlock();
         }
-        rows.add(row);
     }
-    
+
+    /**
+     * Appends all rows of a CSV file whose lines are written like the data
+     * lines of a text table file. The file is parsed before the table is
+     * locked, and the rows are then appended in one step with the indexes
+     * updated once at the end. Nothing is added if any line is invalid.
+     * Returns the number of rows added.
+     */
+    public int bulkLoad(String filePath) throws IOException {
+        List<ColumnData> rows = BulkLoader.parse(filePath, this);
+        appendColumns(rows);
+        return rows.isEmpty() ? 0 : rows.get(0).size();
+    }
+
+    /**
+     * Appends rows given as one column of values per table column, with the
+     * same types as this table's columns
+     */
+    void appendColumns(List<ColumnData> source) {
+        checkWritable();
+        writeLock.lock();
+        try {
+            if (source.size() != data.size()) {
+                throw new IllegalArgumentException("Number of columns doesn't match the table");
+            }
+            if (source.isEmpty()) {
+                return;
+            }
+            int added = source.get(0).size();
+            for (int i = 0; i < source.size(); i++) {
+                if (source.get(i).getType() != columns.get(i).getType() || source.get(i).size() != added) {
+                    throw new IllegalArgumentException("Columns don't match the table");
+                }
+            }
+            if (added == 0) {
+                return;
+            }
+            for (int i = 0; i < source.size(); i++) {
+                data.get(i).appendAll(source.get(i));
+            }
+            indexRows(rowCount, rowCount + added);
+            rowCount += added;
+            version++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the rows from the given position on, undoing an append that
+     * couldn't be logged
+     */
+    void truncateRows(int newRowCount) {
+        checkWritable();
+        writeLock.lock();
+        try {
+            int[] rows = new int[Math.max(rowCount - newRowCount, 0)];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = newRowCount + i;
+            }
+            deleteRows(rows);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Creates a hash index on a column, used for equality lookups on that column
+     */
+    public void createIndex(int columnIndex) {
+        checkWritable();
+        writeLock.lock();
+        try {
+            if (!isValidColumn(columnIndex)) {
+                throw new IllegalArgumentException("Invalid column index: " + columnIndex);
+            }
+            if (indexes.containsKey(columnIndex)) {
+                throw new IllegalArgumentException("Index on column " + columnIndex + " already exists");
+            }
+            HashIndex index = new HashIndex(columns.get(columnIndex).getType());
+            index.rebuild(data.get(columnIndex), rowCount);
+            indexes.put(columnIndex, index);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean hasIndex(int columnIndex) {
+        readLock.lock();
+        try {
+            return indexes.containsKey(columnIndex);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Creates a sorted index on a column, used for range lookups and ordered
+     * output on that column
+     */
+    public void createSortedIndex(int columnIndex) {
+        checkWritable();
+        writeLock.lock();
+        try {
+            if (!isValidColumn(columnIndex)) {
+                throw new IllegalArgumentException("Invalid column index: " + columnIndex);
+            }
+            if (sortedIndexes.containsKey(columnIndex)) {
+                throw new IllegalArgumentException("Sorted index on column " + columnIndex + " already exists");
+            }
+            SortedIndex index = new SortedIndex();
+            index.rebuild(data.get(columnIndex), rowCount);
+            sortedIndexes.put(columnIndex, index);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean hasSortedIndex(int columnIndex) {
+        readLock.lock();
+        try {
+            return sortedIndexes.containsKey(columnIndex);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Switches a STRING column between dictionary encoding, which stores an int
+     * code per row and each distinct value once, and plain strings. The values
+     * stay the same; only their storage changes.
+     */
+    public void setDictionaryEncoded(int columnIndex, boolean encoded) {
+        checkWritable();
+        writeLock.lock();
+        try {
+            if (!isValidColumn(columnIndex)) {
+                throw new IllegalArgumentException("Invalid column index: " + columnIndex);
+            }
+            DataType type = columns.get(columnIndex).getType();
+            if (type != DataType.STRING) {
+                throw new IllegalArgumentException("Only STRING columns can be dictionary-encoded");
+            }
+            if (isDictionaryEncoded(columnIndex) == encoded) {
+                return;
+            }
+            ColumnData columnData = ColumnData.create(type, encoded);
+            columnData.ensureCapacity(rowCount);
+            columnData.appendAll(data.get(columnIndex));
+            data.set(columnIndex, columnData);
+            // The rows are unchanged, but the file has to be rewritten to record the encoding
+            version++;
+            rewriteVersion++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isDictionaryEncoded(int columnIndex) {
+        readLock.lock();
+        try {
+            return isValidColumn(columnIndex) && data.get(columnIndex) instanceof DictionaryColumnData;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     public List<Column> getColumns() {
         return Collections.unmodifiableList(columns);
     }
-    
+
+    /**
+     * Returns a read-only view of the rows; each row is materialized on access
+     */
     public List<Row> getRows() {
-        return Collections.unmodifiableList(rows);
+        Table snapshot = snapshot();
+        return new AbstractList<Row>() {
+            @Override
+            public Row get(int index) {
+                return snapshot.getRow(index);
+            }
+
+            @Override
+            public int size() {
+                return snapshot.rowCount;
+            }
+        };
+    }
+
+    /**
+     * Materializes the row at the given position
+     */
+    public Row getRow(int rowIndex) {
+        readLock.lock();
+        try {
+            if (rowIndex < 0 || rowIndex >= rowCount) {
+                throw new IndexOutOfBoundsException("Invalid row index: " + rowIndex);
+            }
+            Row row = new Row();
+            for (ColumnData columnData : data) {
+                row.addCell(columnData.getCell(rowIndex));
+            }
+            return row;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a row made of a row of the left table followed by a row of the right table
+     */
+    void appendJoinedRow(Table left, int leftRow, Table right, int rightRow) {
+        checkWritable();
+        writeLock.lock();
+        try {
+            int column = 0;
+            for (ColumnData source : left.data) {
+                data.get(column++).appendFrom(source, leftRow);
+            }
+            for (ColumnData source : right.data) {
+                data.get(column++).appendFrom(source, rightRow);
+            }
+            indexRows(rowCount, rowCount + 1);
+            rowCount++;
+            version++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the lock that must be held while reading the column data directly
+     */
+    Lock readLock() {
+        return readLock;
+    }
+
+    /**
+     * Returns the lock that must be held while changing the table
+     */
+    Lock writeLock() {
+        return writeLock;
+    }
+
+    /**
+     * Returns the storage of a column; callers must hold the read or write
+     * lock, or call this on a snapshot
+     */
+    ColumnData getColumnData(int columnIndex) {
+        if (!isValidColumn(columnIndex)) {
+            throw new IllegalArgumentException("Invalid column index: " + columnIndex);
+        }
+        return data.get(columnIndex);
     }
-    
+
+    /**
+     * Returns a counter that changes whenever the table's data or columns change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns a counter that changes on every change other than appending rows,
+     * i.e. whenever rows already written to a file may no longer match
+     */
+    long getRewriteVersion() {
+        return rewriteVersion;
+    }
+
+    /**
+     * Estimates the heap used by the table's data and indexes in bytes
+     */
+    long estimateMemoryBytes() {
+        readLock.lock();
+        try {
+            long bytes = 0;
+            for (ColumnData columnData : data) {
+                bytes += columnData.estimateBytes();
+            }
+            for (HashIndex index : indexes.values()) {
+                bytes += index.estimateBytes(rowCount);
+            }
+            for (SortedIndex index : sortedIndexes.values()) {
+                bytes += index.estimateBytes(rowCount);
+            }
+            return bytes;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     public int getColumnCount() {
         return columns.size();
     }
-    
+
     public int getRowCount() {
-        return rows.size();
+        return rowCount;
     }
-    
+
     /**
      * Selects rows that match a specific value in a column
      */
     public List<Row> select(int columnIndex, String value) {
-        List<Row> result = new ArrayList<>();
-        for (Row row : rows) {
-            if (columnIndex >= 0 && columnIndex < row.size() && 
-                row.getCell(columnIndex).toString().equals(value)) {
-                result.add(row);
+        if (!readOnly && !hasIndex(columnIndex)) {
+            return snapshot().select(columnIndex, value);
+        }
+        readLock.lock();
+        try {
+            int[] matchingRows = findRows(columnIndex, value);
+            List<Row> result = new ArrayList<>(matchingRows.length);
+            for (int row : matchingRows) {
+                result.add(getRow(row));
             }
+            return result;
+        } finally {
+            readLock.unlock();
         }
-        return result;
     }
-    
+
+    /**
+     * Returns a cursor over all rows of the table as they are now
+     */
+    public RowCursor cursor() {
+        return new RowCursor(snapshot());
+    }
+
+    /**
+     * Returns a cursor over the rows that match a specific value in a column.
+     * Without an index on the column, rows are only tested as the cursor is read.
+     */
+    public RowCursor cursor(int columnIndex, String value) {
+        return cursor(columnIndex, value, defaultPath(columnIndex));
+    }
+
+    /**
+     * Returns a cursor over the rows that match a specific value in a column,
+     * found along the given access path, or with a scan if the column lacks
+     * the index it needs
+     */
+    RowCursor cursor(int columnIndex, String value, AccessPath path) {
+        readLock.lock();
+        try {
+            Table snapshot = snapshot();
+            if (!isValidColumn(columnIndex)) {
+                return new RowCursor(snapshot, RowPredicate.NONE);
+            }
+            AccessPath usable = usablePath(columnIndex, path);
+            if (usable != AccessPath.SCAN) {
+                return new RowCursor(snapshot, findRows(columnIndex, value, usable));
+            }
+            return new RowCursor(snapshot, RowPredicate.equalTo(snapshot.data.get(columnIndex), value));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a cursor over the rows that match a WHERE expression, tested
+     * as the cursor is read
+     */
+    public RowCursor cursor(WhereExpression where) {
+        Table snapshot = snapshot();
+        return new RowCursor(snapshot, where.compile(snapshot));
+    }
+
+    /**
+     * Returns a cursor over the rows whose value in a column lies between low
+     * and high, both included, ordered by that value. Uses the column's sorted
+     * index if it has one; otherwise the matching rows are found with a scan
+     * and then sorted.
+     */
+    public RowCursor rangeCursor(int columnIndex, String low, String high) {
+        return rangeCursor(columnIndex, low, high, AccessPath.SORTED_INDEX);
+    }
+
+    /**
+     * Returns a cursor over the rows whose value in a column lies between low
+     * and high, ordered by that value, using the sorted index only if the path
+     * asks for it
+     */
+    RowCursor rangeCursor(int columnIndex, String low, String high, AccessPath path) {
+        Table snapshot;
+        Object lowValue;
+        Object highValue;
+        readLock.lock();
+        try {
+            if (!isValidColumn(columnIndex)) {
+                throw new IllegalArgumentException("Invalid column index: " + columnIndex);
+            }
+            DataType type = columns.get(columnIndex).getType();
+            lowValue = parseBound(low, type);
+            highValue = parseBound(high, type);
+            snapshot = snapshot();
+            SortedIndex index = path == AccessPath.SORTED_INDEX ? sortedIndexes.get(columnIndex) : null;
+            if (compareValues(lowValue, highValue) > 0) {
+                return new RowCursor(snapshot, new int[0]);
+            }
+            if (index != null) {
+                return new RowCursor(snapshot, index.range(lowValue, highValue));
+            }
+        } finally {
+            readLock.unlock();
+        }
+        ColumnData columnData = snapshot.data.get(columnIndex);
+        int[] positions = RowPredicate.between(columnData, lowValue, highValue).findRows(snapshot.rowCount);
+        return new RowCursor(snapshot, sortByValue(columnData, positions, false, positions.length));
+    }
+
+    /**
+     * Returns a cursor over up to limit rows ordered by the value in a column,
+     * with rows of equal value in table order and NULLs last. Uses the
+     * column's sorted index if it has one; otherwise the rows are sorted.
+     */
+    public RowCursor orderedCursor(int columnIndex, boolean descending, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit can't be negative: " + limit);
+        }
+        Table snapshot;
+        readLock.lock();
+        try {
+            if (!isValidColumn(columnIndex)) {
+                throw new IllegalArgumentException("Invalid column index: " + columnIndex);
+            }
+            snapshot = snapshot();
+            SortedIndex index = sortedIndexes.get(columnIndex);
+            if (index != null) {
+                return new RowCursor(snapshot, index.ordered(descending, limit));
+            }
+        } finally {
+            readLock.unlock();
+        }
+        int[] positions = new int[snapshot.rowCount];
+        for (int row = 0; row < positions.length; row++) {
+            positions[row] = row;
+        }
+        return new RowCursor(snapshot, sortByValue(snapshot.data.get(columnIndex), positions, descending, limit));
+    }
+
     /**
      * Updates rows in the table based on search criteria
      */
     public void update(int searchColumnIndex, String searchValue, int targetColumnIndex, String targetValue) {
-        for (Row row : rows) {
-            if (searchColumnIndex >= 0 && searchColumnIndex < row.size() && 
-                row.getCell(searchColumnIndex).toString().equals(searchValue)) {
-                
-                if (targetColumnIndex >= 0 && targetColumnIndex < row.size()) {
-                    DataType targetType = columns.get(targetColumnIndex).getType();
-                    Cell newCell = Cell.parseCell(targetValue, targetType);
-                    row.getCell(targetColumnIndex).setValue(newCell.getValue());
-                }
+        checkWritable();
+        writeLock.lock();
+        try {
+            if (!isValidColumn(searchColumnIndex) || !isValidColumn(targetColumnIndex)) {
+                return;
+            }
+            updateRows(findRows(searchColumnIndex, searchValue), targetColumnIndex, targetValue);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sets a column to a value in the rows that match a WHERE expression
+     */
+    public void update(WhereExpression where, int targetColumnIndex, String targetValue) {
+        checkWritable();
+        writeLock.lock();
+        try {
+            RowPredicate predicate = where.compile(this);
+            if (!isValidColumn(targetColumnIndex)) {
+                return;
+            }
+            updateRows(predicate.findRows(rowCount), targetColumnIndex, targetValue);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sets a column to a value in the given rows; the caller holds the write lock
+     */
+    private void updateRows(int[] rows, int targetColumnIndex, String targetValue) {
+        ColumnData targetData = data.get(targetColumnIndex);
+        DataType targetType = columns.get(targetColumnIndex).getType();
+        Object newValue = Cell.parseCell(targetValue, targetType).getValue();
+        List<ColumnIndex> targetIndexes = indexesOn(targetColumnIndex);
+
+        for (int row : rows) {
+            for (ColumnIndex index : targetIndexes) {
+                index.remove(targetData.getValue(row), row);
+            }
+            targetData.set(row, newValue);
+            for (ColumnIndex index : targetIndexes) {
+                index.add(targetData.getValue(row), row);
             }
         }
+        if (rows.length > 0) {
+            version++;
+            rewriteVersion++;
+        }
     }
-    
+
     /**
      * Deletes rows that match a specific value in a column
      */
     public void delete(int searchColumnIndex, String searchValue) {
-        rows.removeIf(row -> 
-            searchColumnIndex >= 0 && searchColumnIndex < row.size() && 
-            row.getCell(searchColumnIndex).toString().equals(searchValue)
-        );
+        checkWritable();
+        writeLock.lock();
+        try {
+            deleteRows(findRows(searchColumnIndex, searchValue));
+        } finally {
+            writeLock.unlock();
+        }
     }
-    
+
+    /**
+     * Deletes the rows that match a WHERE expression
+     */
+    public void delete(WhereExpression where) {
+        checkWritable();
+        writeLock.lock();
+        try {
+            deleteRows(where.compile(this).findRows(rowCount));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the given rows, in ascending order; the caller holds the write lock
+     */
+    private void deleteRows(int[] matchingRows) {
+        if (matchingRows.length == 0) {
+            return;
+        }
+        int oldRowCount = rowCount;
+        BitSet removed = new BitSet(oldRowCount);
+        for (int row : matchingRows) {
+            removed.set(row);
+        }
+        for (ColumnData columnData : data) {
+            columnData.removeRows(removed);
+        }
+        rowCount -= matchingRows.length;
+        version++;
+        rewriteVersion++;
+
+        if (indexes.isEmpty() && sortedIndexes.isEmpty()) {
+            return;
+        }
+        // Rows after the first deleted one moved down, so the indexes only
+        // change their positions instead of being rebuilt
+        int firstRow = matchingRows[0];
+        int[] newPositions = new int[oldRowCount - firstRow];
+        int next = firstRow;
+        for (int row = firstRow; row < oldRowCount; row++) {
+            newPositions[row - firstRow] = removed.get(row) ? -1 : next++;
+        }
+        for (HashIndex index : indexes.values()) {
+            index.removeRows(firstRow, newPositions);
+        }
+        for (SortedIndex index : sortedIndexes.values()) {
+            index.removeRows(firstRow, newPositions);
+        }
+    }
+
     /**
      * Counts rows that match a specific value in a column
      */
     public int count(int searchColumnIndex, String searchValue) {
-        int count = 0;
-        for (Row row : rows) {
-            if (searchColumnIndex >= 0 && searchColumnIndex < row.size() && 
-                row.getCell(searchColumnIndex).toString().equals(searchValue)) {
-                count++;
+        return count(searchColumnIndex, searchValue, defaultPath(searchColumnIndex));
+    }
+
+    /**
+     * Counts rows that match a specific value in a column, found along the
+     * given access path
+     */
+    int count(int searchColumnIndex, String searchValue, AccessPath path) {
+        AccessPath usable = usablePath(searchColumnIndex, path);
+        if (!readOnly && usable == AccessPath.SCAN) {
+            return snapshot().count(searchColumnIndex, searchValue, usable);
+        }
+        readLock.lock();
+        try {
+            if (!isValidColumn(searchColumnIndex)) {
+                return 0;
+            }
+            if (usable != AccessPath.SCAN) {
+                IntList rows = lookup(searchColumnIndex, searchValue, usable);
+                return rows == null ? 0 : rows.size();
             }
+            return RowPredicate.equalTo(data.get(searchColumnIndex), searchValue).count(rowCount);
+        } finally {
+            readLock.unlock();
         }
-        return count;
     }
-    
+
+    /**
+     * Counts the rows that match a WHERE expression
+     */
+    public int count(WhereExpression where) {
+        if (!readOnly) {
+            return snapshot().count(where);
+        }
+        return where.compile(this).count(rowCount);
+    }
+
     /**
      * Performs an aggregate operation on a numeric column for rows that match a search criteria
      */
     public Object aggregate(int searchColumnIndex, String searchValue, int targetColumnIndex, String operation) {
-        List<Row> matchingRows = select(searchColumnIndex, searchValue);
-        
-        if (matchingRows.isEmpty()) {
-            return null;
+        return aggregate(searchColumnIndex, searchValue, targetColumnIndex, Collections.singletonList(operation)).get(operation);
+    }
+
+    /**
+     * Performs several aggregate operations on a numeric column for rows that match a
+     * search criteria, all in one pass. Supported operations are sum, product, maximum,
+     * minimum, count and average; results are keyed by operation and are null when no
+     * row matches.
+     */
+    public Map<String, Object> aggregate(int searchColumnIndex, String searchValue, int targetColumnIndex,
+                                         List<String> operations) {
+        return aggregate(searchColumnIndex, searchValue, targetColumnIndex, operations, defaultPath(searchColumnIndex));
+    }
+
+    /**
+     * Performs aggregate operations for rows that match a search criteria,
+     * found along the given access path
+     */
+    Map<String, Object> aggregate(int searchColumnIndex, String searchValue, int targetColumnIndex,
+                                  List<String> operations, AccessPath path) {
+        AccessPath usable = usablePath(searchColumnIndex, path);
+        if (!readOnly && usable == AccessPath.SCAN) {
+            return snapshot().aggregate(searchColumnIndex, searchValue, targetColumnIndex, operations, usable);
+        }
+        readLock.lock();
+        try {
+            NumericColumnData target = aggregateTarget(targetColumnIndex, operations);
+            Aggregation.Accumulator accumulator;
+            if (!isValidColumn(searchColumnIndex)) {
+                accumulator = new Aggregation.Accumulator();
+            } else if (usable != AccessPath.SCAN) {
+                accumulator = Aggregation.scan(target, findRows(searchColumnIndex, searchValue, usable));
+            } else {
+                RowPredicate predicate = RowPredicate.equalTo(data.get(searchColumnIndex), searchValue);
+                accumulator = Aggregation.scan(target, predicate, rowCount, operations);
+            }
+            return results(accumulator, operations);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Performs aggregate operations on a numeric column for the rows that
+     * match a WHERE expression, all in one pass
+     */
+    public Map<String, Object> aggregate(WhereExpression where, int targetColumnIndex, List<String> operations) {
+        if (!readOnly) {
+            return snapshot().aggregate(where, targetColumnIndex, operations);
+        }
+        NumericColumnData target = aggregateTarget(targetColumnIndex, operations);
+        return results(Aggregation.scan(target, where.compile(this), rowCount, operations), operations);
+    }
+
+    /**
+     * Checks the operations of an aggregate and returns the numeric column they run on
+     */
+    private NumericColumnData aggregateTarget(int targetColumnIndex, List<String> operations) {
+        for (String operation : operations) {
+            Aggregation.checkOperation(operation);
+        }
+        if (!isValidColumn(targetColumnIndex)) {
+            throw new IllegalArgumentException("Invalid column index: " + targetColumnIndex);
         }
-        
         DataType columnType = columns.get(targetColumnIndex).getType();
         if (columnType != DataType.INTEGER && columnType != DataType.FLOAT) {
             throw new IllegalArgumentException("Aggregate operations can only be performed on numeric columns");
         }
-        
-        switch (operation.toLowerCase()) {
-            case "sum":
-                double sum = 0;
-                for (Row row : matchingRows) {
-                    Cell cell = row.getCell(targetColumnIndex);
-                    if (cell.getValue() != null) {
-                        sum += ((Number) cell.getValue()).doubleValue();
-                    }
-                }
-                return sum;
-                
-            case "product":
-                double product = 1;
-                for (Row row : matchingRows) {
-                    Cell cell = row.getCell(targetColumnIndex);
-                    if (cell.getValue() != null) {
-                        product *= ((Number) cell.getValue()).doubleValue();
-                    }
-                }
-                return product;
-                
-            case "maximum":
-                double max = Double.NEGATIVE_INFINITY;
-                for (Row row : matchingRows) {
-                    Cell cell = row.getCell(targetColumnIndex);
-                    if (cell.getValue() != null) {
-                        double value = ((Number) cell.getValue()).doubleValue();
-                        if (value > max) {
-                            max = value;
-                        }
-                    }
-                }
-                return max == Double.NEGATIVE_INFINITY ? null : max;
-                
-            case "minimum":
-                double min = Double.POSITIVE_INFINITY;
-                for (Row row : matchingRows) {
-                    Cell cell = row.getCell(targetColumnIndex);
-                    if (cell.getValue() != null) {
-                        double value = ((Number) cell.getValue()).doubleValue();
-                        if (value < min) {
-                            min = value;
-                        }
-                    }
+        return (NumericColumnData) data.get(targetColumnIndex);
+    }
+
+    private static Map<String, Object> results(Aggregation.Accumulator accumulator, List<String> operations) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (String operation : operations) {
+            results.put(operation, accumulator.result(operation));
+        }
+        return results;
+    }
+
+    /**
+     * Performs aggregate operations on a numeric column for each distinct value of
+     * a key column, in one pass over a snapshot. Returns a table with the key
+     * column followed by one column per operation, named like sum(price), with a
+     * row per group in order of first appearance; NULL keys form a group of
+     * their own.
+     */
+    public Table groupBy(int keyColumnIndex, int targetColumnIndex, List<String> operations) throws IOException {
+        return groupBy(keyColumnIndex, targetColumnIndex, operations, GroupAggregation.DEFAULT_GROUP_LIMIT);
+    }
+
+    /**
+     * Groups like groupBy, keeping at most maxGroupsInMemory groups in memory at
+     * once; rows of further groups are spilled to temporary files
+     */
+    public Table groupBy(int keyColumnIndex, int targetColumnIndex, List<String> operations, int maxGroupsInMemory)
+            throws IOException {
+        if (!readOnly) {
+            return snapshot().groupBy(keyColumnIndex, targetColumnIndex, operations, maxGroupsInMemory);
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("No aggregate operations given");
+        }
+        for (String operation : operations) {
+            Aggregation.checkOperation(operation);
+        }
+        if (maxGroupsInMemory <= 0) {
+            throw new IllegalArgumentException("Group limit must be positive: " + maxGroupsInMemory);
+        }
+        if (!isValidColumn(keyColumnIndex)) {
+            throw new IllegalArgumentException("Invalid column index: " + keyColumnIndex);
+        }
+        if (!isValidColumn(targetColumnIndex)) {
+            throw new IllegalArgumentException("Invalid column index: " + targetColumnIndex);
+        }
+        DataType columnType = columns.get(targetColumnIndex).getType();
+        if (columnType != DataType.INTEGER && columnType != DataType.FLOAT) {
+            throw new IllegalArgumentException("Aggregate operations can only be performed on numeric columns");
+        }
+        return GroupAggregation.aggregate(name + "_groupby", columns.get(keyColumnIndex), data.get(keyColumnIndex),
+            columns.get(targetColumnIndex), (NumericColumnData) data.get(targetColumnIndex), rowCount,
+            operations, maxGroupsInMemory);
+    }
+
+    /**
+     * Returns the positions of the rows that match a specific value in a column,
+     * in ascending order. Uses the column's index if it has one.
+     */
+    private int[] findRows(int columnIndex, String value) {
+        return findRows(columnIndex, value, defaultPath(columnIndex));
+    }
+
+    /**
+     * Returns the positions of the rows that match a specific value in a column,
+     * in ascending order, found along the given access path
+     */
+    private int[] findRows(int columnIndex, String value, AccessPath path) {
+        if (!isValidColumn(columnIndex)) {
+            return new int[0];
+        }
+        AccessPath usable = usablePath(columnIndex, path);
+        if (usable != AccessPath.SCAN) {
+            IntList rows = lookup(columnIndex, value, usable);
+            return rows == null ? new int[0] : rows.toArray();
+        }
+        RowPredicate predicate = RowPredicate.equalTo(data.get(columnIndex), value);
+        if (predicate == RowPredicate.NONE) {
+            return new int[0];
+        }
+        return predicate.findRows(rowCount);
+    }
+
+    /**
+     * Looks a value up in the hash or sorted index on a column; returns null
+     * if no row holds it
+     */
+    private IntList lookup(int columnIndex, String value, AccessPath path) {
+        if (path == AccessPath.HASH_INDEX) {
+            return indexes.get(columnIndex).lookup(value);
+        }
+        Object searchValue = RowPredicate.parseSearchValue(value, columns.get(columnIndex).getType());
+        return searchValue == RowPredicate.NO_VALUE ? null : sortedIndexes.get(columnIndex).lookup(searchValue);
+    }
+
+    /**
+     * Returns the access path searches on a column take unless told otherwise
+     */
+    private AccessPath defaultPath(int columnIndex) {
+        return hasIndex(columnIndex) ? AccessPath.HASH_INDEX : AccessPath.SCAN;
+    }
+
+    /**
+     * Returns the given access path if the column has the index it needs, or SCAN
+     */
+    private AccessPath usablePath(int columnIndex, AccessPath path) {
+        readLock.lock();
+        try {
+            if (path == AccessPath.HASH_INDEX && indexes.containsKey(columnIndex)
+                    || path == AccessPath.SORTED_INDEX && sortedIndexes.containsKey(columnIndex)) {
+                return path;
+            }
+            return AccessPath.SCAN;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Parses a bound of a range search; NULL isn't a valid bound
+     */
+    static Object parseBound(String bound, DataType type) {
+        Object value = Cell.parseCell(bound, type).getValue();
+        if (value == null) {
+            throw new IllegalArgumentException("Range bounds can't be NULL");
+        }
+        return value;
+    }
+
+    /**
+     * Compares two non-NULL values of the same column type, in the order sorted indexes use
+     */
+    @SuppressWarnings("unchecked")
+    static int compareValues(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    /**
+     * Orders row positions by their value in a column, keeping equal values in
+     * table order and NULLs last, and returns up to limit of them
+     */
+    private static int[] sortByValue(ColumnData column, int[] positions, boolean descending, int limit) {
+        Integer[] order = new Integer[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            order[i] = positions[i];
+        }
+        // Arrays.sort on objects is stable, so ties stay in position order
+        Arrays.sort(order, (a, b) -> {
+            Object valueA = column.getValue(a);
+            Object valueB = column.getValue(b);
+            if (valueA == null || valueB == null) {
+                return valueA == null ? (valueB == null ? 0 : 1) : -1;
+            }
+            int comparison = compareValues(valueA, valueB);
+            return descending ? -comparison : comparison;
+        });
+        int[] result = new int[Math.min(limit, order.length)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given rows, which were just appended, to every index
+     */
+    private void indexRows(int fromRow, int toRow) {
+        if (indexes.isEmpty() && sortedIndexes.isEmpty()) {
+            return;
+        }
+        for (int columnIndex = 0; columnIndex < data.size(); columnIndex++) {
+            List<ColumnIndex> columnIndexes = indexesOn(columnIndex);
+            ColumnData columnData = data.get(columnIndex);
+            for (ColumnIndex index : columnIndexes) {
+                for (int row = fromRow; row < toRow; row++) {
+                    index.add(columnData.getValue(row), row);
                 }
-                return min == Double.POSITIVE_INFINITY ? null : min;
-                
-            default:
-                throw new IllegalArgumentException("Unsupported aggregate operation: " + operation);
+            }
+        }
+    }
+
+    /**
+     * Returns the hash and sorted indexes on a column
+     */
+    private List<ColumnIndex> indexesOn(int columnIndex) {
+        List<ColumnIndex> result = new ArrayList<>(2);
+        if (indexes.containsKey(columnIndex)) {
+            result.add(indexes.get(columnIndex));
+        }
+        if (sortedIndexes.containsKey(columnIndex)) {
+            result.add(sortedIndexes.get(columnIndex));
+        }
+        return result;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("Table snapshot is read-only");
         }
     }
+
+    private boolean isValidColumn(int columnIndex) {
+        return columnIndex >= 0 && columnIndex < columns.size();
+    }
 }
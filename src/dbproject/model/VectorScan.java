@@ -0,0 +1,256 @@
+package dbproject.model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels for scans over the arrays behind INTEGER and FLOAT columns,
+ * working a full vector of rows at a time.
+ *
+ * Filters turn a range of rows into a selection mask: bit i of word i / 64
+ * stands for row start + i. Aggregates then read only the rows a selection
+ * marks. Every kernel returns exactly what the row-at-a-time code returns:
+ * comparisons use the same operators, integer sums are exact, and FLOAT
+ * sums and products, whose rounding depends on the order of the additions,
+ * aren't computed here.
+ *
+ * Only used when VectorSupport.ENABLED is set.
+ */
+final class VectorScan {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // Longs in vectors of the same size, for widening int lanes
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, INTS.vectorShape());
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Vector lengths are powers of two up to 64, so the lanes of a vector never straddle two words
+    private static final long INT_LANES = laneBits(INTS.length());
+    private static final long DOUBLE_LANES = laneBits(DOUBLES.length());
+
+    private VectorScan() {
+    }
+
+    /**
+     * Selects the rows from start to end whose value is key
+     */
+    static void selectEquals(int[] values, int key, int start, int end, long[] selection) {
+        int rows = end - start;
+        clear(selection, rows);
+        int bound = INTS.loopBound(rows);
+        int i = 0;
+        for (; i < bound; i += INTS.length()) {
+            VectorMask<Integer> matches = IntVector.fromArray(INTS, values, start + i).eq(key);
+            if (matches.anyTrue()) {
+                selection[i >>> 6] |= matches.toLong() << i;
+            }
+        }
+        for (; i < rows; i++) {
+            if (values[start + i] == key) {
+                selection[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Selects the rows from start to end whose value equals key the way
+     * Double.compare does: NaN matches NaN and 0.0 doesn't match -0.0
+     */
+    static void selectEquals(double[] values, double key, int start, int end, long[] selection) {
+        int rows = end - start;
+        clear(selection, rows);
+        boolean nan = Double.isNaN(key);
+        // Apart from NaN, values Double.compare finds equal have the same bits
+        long keyBits = Double.doubleToLongBits(key);
+        int bound = DOUBLES.loopBound(rows);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector vector = DoubleVector.fromArray(DOUBLES, values, start + i);
+            long matches = nan
+                ? vector.test(VectorOperators.IS_NAN).toLong()
+                : vector.reinterpretAsLongs().eq(keyBits).toLong();
+            selection[i >>> 6] |= matches << i;
+        }
+        for (; i < rows; i++) {
+            if (Double.compare(values[start + i], key) == 0) {
+                selection[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Counts the selected rows of a range of the given length
+     */
+    static int countSelected(long[] selection, int rows) {
+        int count = 0;
+        int words = rows >>> 6;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(selection[w]);
+        }
+        if ((rows & 63) != 0) {
+            count += Long.bitCount(selection[words] & ((1L << rows) - 1));
+        }
+        return count;
+    }
+
+    /**
+     * Returns the exact sum of the selected values
+     */
+    static long sum(int[] values, int start, int end, long[] selection) {
+        int rows = end - start;
+        int bound = INTS.loopBound(rows);
+        LongVector total = LongVector.zero(LONGS);
+        int i = 0;
+        for (; i < bound; i += INTS.length()) {
+            long bits = lanes(selection, i, INT_LANES);
+            if (bits == 0) {
+                continue;
+            }
+            IntVector vector = IntVector.fromArray(INTS, values, start + i);
+            if (bits != INT_LANES) {
+                vector = IntVector.zero(INTS).blend(vector, VectorMask.fromLong(INTS, bits));
+            }
+            // Widen to longs so the lanes can't overflow
+            total = total.add((LongVector) vector.convert(VectorOperators.I2L, 0))
+                .add((LongVector) vector.convert(VectorOperators.I2L, 1));
+        }
+        long sum = total.reduceLanes(VectorOperators.ADD);
+        for (; i < rows; i++) {
+            if (isSelected(selection, i)) {
+                sum += values[start + i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the largest selected value, or Integer.MIN_VALUE if none is selected
+     */
+    static int max(int[] values, int start, int end, long[] selection) {
+        return extreme(values, start, end, selection, true);
+    }
+
+    /**
+     * Returns the smallest selected value, or Integer.MAX_VALUE if none is selected
+     */
+    static int min(int[] values, int start, int end, long[] selection) {
+        return extreme(values, start, end, selection, false);
+    }
+
+    /**
+     * Returns the selected value a fold with > from negative infinity ends
+     * at, in row order: NaN is never taken and, of 0.0 and -0.0, the first
+     */
+    static double max(double[] values, int start, int end, long[] selection) {
+        return extreme(values, start, end, selection, true);
+    }
+
+    /**
+     * Returns the selected value a fold with < from positive infinity ends
+     * at, in row order: NaN is never taken and, of 0.0 and -0.0, the first
+     */
+    static double min(double[] values, int start, int end, long[] selection) {
+        return extreme(values, start, end, selection, false);
+    }
+
+    private static int extreme(int[] values, int start, int end, long[] selection, boolean max) {
+        VectorOperators.Binary operator = max ? VectorOperators.MAX : VectorOperators.MIN;
+        int identity = max ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int rows = end - start;
+        int bound = INTS.loopBound(rows);
+        IntVector result = IntVector.broadcast(INTS, identity);
+        int i = 0;
+        for (; i < bound; i += INTS.length()) {
+            long bits = lanes(selection, i, INT_LANES);
+            if (bits == 0) {
+                continue;
+            }
+            IntVector vector = IntVector.fromArray(INTS, values, start + i);
+            result = bits == INT_LANES
+                ? result.lanewise(operator, vector)
+                : result.lanewise(operator, vector, VectorMask.fromLong(INTS, bits));
+        }
+        int extreme = result.reduceLanes(max ? VectorOperators.MAX : VectorOperators.MIN);
+        for (; i < rows; i++) {
+            if (isSelected(selection, i)) {
+                extreme = max ? Math.max(extreme, values[start + i]) : Math.min(extreme, values[start + i]);
+            }
+        }
+        return extreme;
+    }
+
+    private static double extreme(double[] values, int start, int end, long[] selection, boolean max) {
+        VectorOperators.Comparison better = max ? VectorOperators.GT : VectorOperators.LT;
+        double identity = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        int rows = end - start;
+        int bound = DOUBLES.loopBound(rows);
+        DoubleVector result = DoubleVector.broadcast(DOUBLES, identity);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            long bits = lanes(selection, i, DOUBLE_LANES);
+            if (bits == 0) {
+                continue;
+            }
+            DoubleVector vector = DoubleVector.fromArray(DOUBLES, values, start + i);
+            VectorMask<Double> taken = vector.compare(better, result);
+            if (bits != DOUBLE_LANES) {
+                taken = taken.and(VectorMask.fromLong(DOUBLES, bits));
+            }
+            result = result.blend(vector, taken);
+        }
+        double extreme = identity;
+        for (double value : result.toArray()) {
+            if (max ? value > extreme : value < extreme) {
+                extreme = value;
+            }
+        }
+        if (extreme == 0) {
+            // Each lane kept its own first zero, so which sign came first is lost
+            return extremeInOrder(values, start, end, selection, max);
+        }
+        for (; i < rows; i++) {
+            if (isSelected(selection, i)) {
+                double value = values[start + i];
+                if (max ? value > extreme : value < extreme) {
+                    extreme = value;
+                }
+            }
+        }
+        return extreme;
+    }
+
+    private static double extremeInOrder(double[] values, int start, int end, long[] selection, boolean max) {
+        double extreme = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        for (int i = 0; i < end - start; i++) {
+            if (isSelected(selection, i)) {
+                double value = values[start + i];
+                if (max ? value > extreme : value < extreme) {
+                    extreme = value;
+                }
+            }
+        }
+        return extreme;
+    }
+
+    private static boolean isSelected(long[] selection, int i) {
+        return (selection[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Returns the selection bits of the vector of rows starting at offset i
+     */
+    private static long lanes(long[] selection, int i, long laneBits) {
+        return (selection[i >>> 6] >>> i) & laneBits;
+    }
+
+    private static long laneBits(int lanes) {
+        return lanes == Long.SIZE ? -1L : (1L << lanes) - 1;
+    }
+
+    private static void clear(long[] selection, int rows) {
+        for (int w = 0, words = (rows + 63) >>> 6; w < words; w++) {
+            selection[w] = 0;
+        }
+    }
+}
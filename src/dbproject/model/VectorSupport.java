@@ -0,0 +1,16 @@
+package dbproject.model;
+
+/**
+ * Decides whether scans run through VectorScan. The Vector API is an
+ * incubator module in JDK 17, so it is only used when the JVM was started
+ * with --add-modules jdk.incubator.vector, and -Ddbproject.vector=false turns
+ * it off. VectorScan may only be touched once this says yes: loading it
+ * without the module fails.
+ */
+final class VectorSupport {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("dbproject.vector", "true"))
+        && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private VectorSupport() {
+    }
+}
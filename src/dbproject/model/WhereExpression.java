@@ -0,0 +1,470 @@
+package dbproject.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A search condition over several columns, such as
+ * <pre>price &gt;= 10 AND (name = "pen" OR NOT 3 IS NULL)</pre>
+ * Columns are referred to by name or by number. Comparisons use =, !=, &lt;&gt;,
+ * &lt;, &lt;=, &gt; and &gt;= against a literal written like values in commands:
+ * a number, a quoted string or NULL, where = NULL and != NULL are the same as
+ * IS NULL and IS NOT NULL. Comparisons never match NULL cells, and NOT
+ * matches exactly the rows its operand doesn't. AND binds tighter than OR.
+ *
+ * An expression is parsed once and then compiled against the columns of a
+ * table into a tree of RowPredicate objects, so rows are tested without
+ * looking at the expression again.
+ */
+public class WhereExpression {
+    /**
+     * Comparison operators, with the symbol toString writes
+     */
+    enum Operator {
+        EQUAL("="), NOT_EQUAL("!="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    private final Node root;
+
+    private WhereExpression(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Parses an expression; throws IllegalArgumentException describing the
+     * first syntax error
+     */
+    public static WhereExpression parse(String text) {
+        Parser parser = new Parser(tokenize(text));
+        Node root = parser.parseOr();
+        if (parser.hasNext()) {
+            throw new IllegalArgumentException("Unexpected " + parser.peek() + " in WHERE expression");
+        }
+        return new WhereExpression(root);
+    }
+
+    /**
+     * Compiles the expression against the columns of a table, which must not
+     * change while the predicate is used: a snapshot, or a table whose lock
+     * is held. Throws IllegalArgumentException for unknown columns and
+     * literals that can't be compared with their column.
+     */
+    RowPredicate compile(Table table) {
+        return root.compile(table);
+    }
+
+    /**
+     * Writes the expression in a canonical form that parses back to it
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        root.appendTo(text);
+        return text.toString();
+    }
+
+    /**
+     * Splits the text into parentheses, operators, quoted strings and words
+     */
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '=' || c == '!' || c == '<' || c == '>') {
+                int end = i + 1;
+                if (end < text.length() && (text.charAt(end) == '=' || c == '<' && text.charAt(end) == '>')) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else if (c == '"') {
+                int end = i + 1;
+                while (end < text.length() && text.charAt(end) != '"') {
+                    end += text.charAt(end) == '\\' ? 2 : 1;
+                }
+                if (end >= text.length()) {
+                    throw new IllegalArgumentException("Unterminated string in WHERE expression: " + text.substring(i));
+                }
+                tokens.add(text.substring(i, end + 1));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end))
+                        && "()=!<>\"".indexOf(text.charAt(end)) < 0) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Recursive descent parser over the tokens of one expression
+     */
+    private static class Parser {
+        private final List<String> tokens;
+        private int position;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        boolean hasNext() {
+            return position < tokens.size();
+        }
+
+        String peek() {
+            return hasNext() ? tokens.get(position) : "end of expression";
+        }
+
+        private boolean accept(String keyword) {
+            if (hasNext() && tokens.get(position).equalsIgnoreCase(keyword)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private String next(String expected) {
+            if (!hasNext()) {
+                throw new IllegalArgumentException("Expected " + expected + " at end of WHERE expression");
+            }
+            return tokens.get(position++);
+        }
+
+        Node parseOr() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (accept("OR")) {
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private Node parseAnd() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseNot());
+            while (accept("AND")) {
+                operands.add(parseNot());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private Node parseNot() {
+            if (accept("NOT")) {
+                return new Not(parseNot());
+            }
+            if (accept("(")) {
+                Node inner = parseOr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Expected ) instead of " + peek() + " in WHERE expression");
+                }
+                return inner;
+            }
+            return parseComparison();
+        }
+
+        private Node parseComparison() {
+            String column = next("a column");
+            if (isReserved(column) || column.startsWith("\"")) {
+                throw new IllegalArgumentException("Expected a column instead of " + column + " in WHERE expression");
+            }
+            if (accept("IS")) {
+                boolean negated = accept("NOT");
+                if (!accept("NULL")) {
+                    throw new IllegalArgumentException("Expected NULL instead of " + peek() + " in WHERE expression");
+                }
+                return new Comparison(column, negated ? Operator.NOT_EQUAL : Operator.EQUAL, Literal.NULL);
+            }
+            String symbol = next("a comparison operator");
+            Operator operator = parseOperator(symbol);
+            Literal literal = Literal.parse(next("a value"));
+            if (literal.value == null && operator != Operator.EQUAL && operator != Operator.NOT_EQUAL) {
+                throw new IllegalArgumentException("NULL can only be compared with = or !=");
+            }
+            return new Comparison(column, operator, literal);
+        }
+
+        private static Operator parseOperator(String symbol) {
+            switch (symbol) {
+                case "=":
+                case "==":
+                    return Operator.EQUAL;
+                case "!=":
+                case "<>":
+                    return Operator.NOT_EQUAL;
+                case "<":
+                    return Operator.LESS;
+                case "<=":
+                    return Operator.LESS_OR_EQUAL;
+                case ">":
+                    return Operator.GREATER;
+                case ">=":
+                    return Operator.GREATER_OR_EQUAL;
+                default:
+                    throw new IllegalArgumentException("Expected a comparison operator instead of " + symbol
+                        + " in WHERE expression");
+            }
+        }
+
+        /**
+         * Checks whether a token is a keyword, parenthesis or operator, which
+         * can't name a column
+         */
+        private static boolean isReserved(String token) {
+            for (String keyword : new String[] {"AND", "OR", "NOT", "IS", "NULL"}) {
+                if (token.equalsIgnoreCase(keyword)) {
+                    return true;
+                }
+            }
+            return "()=!<>".indexOf(token.charAt(0)) >= 0;
+        }
+    }
+
+    /**
+     * A literal with the type its syntax gives it: INTEGER, FLOAT, STRING, or
+     * NULL with a null value
+     */
+    private static class Literal {
+        static final Literal NULL = new Literal("NULL", DataType.NULL, null);
+
+        private final String text;
+        private final DataType type;
+        private final Object value;
+
+        Literal(String text, DataType type, Object value) {
+            this.text = text;
+            this.type = type;
+            this.value = value;
+        }
+
+        static Literal parse(String text) {
+            if (text.equalsIgnoreCase("NULL")) {
+                return NULL;
+            }
+            if (text.startsWith("\"")) {
+                return new Literal(text, DataType.STRING, Cell.parseCell(text, DataType.STRING).getValue());
+            }
+            try {
+                return new Literal(text, DataType.INTEGER, Cell.parseCell(text, DataType.INTEGER).getValue());
+            } catch (IllegalArgumentException e) {
+                // Not an int, so it has to be a float
+            }
+            try {
+                return new Literal(text, DataType.FLOAT, Cell.parseCell(text, DataType.FLOAT).getValue());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid value in WHERE expression: " + text
+                    + " (strings must be quoted)");
+            }
+        }
+    }
+
+    private abstract static class Node {
+        abstract RowPredicate compile(Table table);
+
+        abstract void appendTo(StringBuilder text);
+
+        /**
+         * Appends the node, in parentheses unless it is a single comparison
+         */
+        void appendOperandTo(StringBuilder text) {
+            text.append('(');
+            appendTo(text);
+            text.append(')');
+        }
+    }
+
+    private static class Comparison extends Node {
+        private final String column;
+        private final Operator operator;
+        private final Literal literal;
+
+        Comparison(String column, Operator operator, Literal literal) {
+            this.column = column;
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        @Override
+        RowPredicate compile(Table table) {
+            int columnIndex = resolveColumn(table);
+            ColumnData columnData = table.getColumnData(columnIndex);
+            DataType columnType = columnData.getType();
+            if (literal.value == null) {
+                return operator == Operator.EQUAL ? RowPredicate.equalTo(columnData, (Object) null)
+                    : RowPredicate.notNull(columnData);
+            }
+            boolean numericColumn = columnType == DataType.INTEGER || columnType == DataType.FLOAT;
+            boolean numericLiteral = literal.type == DataType.INTEGER || literal.type == DataType.FLOAT;
+            if (numericColumn != numericLiteral) {
+                throw new IllegalArgumentException("Can't compare " + columnType + " column " + column
+                    + " with " + literal.text);
+            }
+            if (columnType == DataType.FLOAT && literal.type == DataType.INTEGER) {
+                return RowPredicate.compare(columnData, operator, ((Integer) literal.value).doubleValue());
+            }
+            if (columnType == DataType.INTEGER && literal.type == DataType.FLOAT) {
+                return compareWithDouble(columnData, (Double) literal.value);
+            }
+            return RowPredicate.compare(columnData, operator, literal.value);
+        }
+
+        /**
+         * Compares an INTEGER column with a float by rounding the float to the
+         * nearest int that gives the same result
+         */
+        private RowPredicate compareWithDouble(ColumnData columnData, double value) {
+            if (value == Math.rint(value) && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return RowPredicate.compare(columnData, operator, (int) value);
+            }
+            // NaN lies above every number, as in the order of Double.compare
+            boolean aboveAll = Double.isNaN(value) || value > Integer.MAX_VALUE;
+            boolean belowAll = value < Integer.MIN_VALUE;
+            switch (operator) {
+                case EQUAL:
+                    return RowPredicate.NONE;
+                case NOT_EQUAL:
+                    return RowPredicate.notNull(columnData);
+                case LESS:
+                case LESS_OR_EQUAL:
+                    if (aboveAll || belowAll) {
+                        return aboveAll ? RowPredicate.notNull(columnData) : RowPredicate.NONE;
+                    }
+                    return RowPredicate.compare(columnData, Operator.LESS_OR_EQUAL, (int) Math.floor(value));
+                default:
+                    if (aboveAll || belowAll) {
+                        return belowAll ? RowPredicate.notNull(columnData) : RowPredicate.NONE;
+                    }
+                    return RowPredicate.compare(columnData, Operator.GREATER_OR_EQUAL, (int) Math.ceil(value));
+            }
+        }
+
+        /**
+         * Finds the column by name, or by number if the reference is one
+         */
+        private int resolveColumn(Table table) {
+            List<Column> columns = table.getColumns();
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).getName().equals(column)) {
+                    return i;
+                }
+            }
+            try {
+                int columnIndex = Integer.parseInt(column);
+                if (columnIndex >= 0 && columnIndex < columns.size()) {
+                    return columnIndex;
+                }
+            } catch (NumberFormatException e) {
+                // Not a column number either
+            }
+            throw new IllegalArgumentException("Unknown column in WHERE expression: " + column);
+        }
+
+        @Override
+        void appendTo(StringBuilder text) {
+            text.append(column);
+            if (literal.value == null) {
+                text.append(operator == Operator.EQUAL ? " IS NULL" : " IS NOT NULL");
+            } else {
+                text.append(' ').append(operator.symbol).append(' ').append(literal.text);
+            }
+        }
+
+        @Override
+        void appendOperandTo(StringBuilder text) {
+            appendTo(text);
+        }
+    }
+
+    private static class And extends Node {
+        private final List<Node> operands;
+
+        And(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        RowPredicate compile(Table table) {
+            List<RowPredicate> predicates = new ArrayList<>(operands.size());
+            for (Node operand : operands) {
+                predicates.add(operand.compile(table));
+            }
+            return RowPredicate.and(predicates);
+        }
+
+        @Override
+        void appendTo(StringBuilder text) {
+            for (int i = 0; i < operands.size(); i++) {
+                if (i > 0) {
+                    text.append(" AND ");
+                }
+                operands.get(i).appendOperandTo(text);
+            }
+        }
+    }
+
+    private static class Or extends Node {
+        private final List<Node> operands;
+
+        Or(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        RowPredicate compile(Table table) {
+            List<RowPredicate> predicates = new ArrayList<>(operands.size());
+            for (Node operand : operands) {
+                predicates.add(operand.compile(table));
+            }
+            return RowPredicate.or(predicates);
+        }
+
+        @Override
+        void appendTo(StringBuilder text) {
+            for (int i = 0; i < operands.size(); i++) {
+                if (i > 0) {
+                    text.append(" OR ");
+                }
+                operands.get(i).appendOperandTo(text);
+            }
+        }
+    }
+
+    private static class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        RowPredicate compile(Table table) {
+            return RowPredicate.not(operand.compile(table));
+        }
+
+        @Override
+        void appendTo(StringBuilder text) {
+            text.append("NOT ");
+            operand.appendOperandTo(text);
+        }
+
+        @Override
+        void appendOperandTo(StringBuilder text) {
+            appendTo(text);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package dbproject.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes made since the last save.
+ *
+ * Each record is an operation name with string arguments, stored as
+ * [int payload length][int CRC32][payload]. Appending a record only queues
+ * it; sync makes it durable. The first thread to sync becomes the leader,
+ * writes every queued record and forces the file once, so all records
+ * queued by concurrent writers share a single fsync (group commit).
+ */
+class WriteAheadLog implements Closeable {
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final ReentrantLock lock;
+    private final Condition flushDone;
+    private final List<ByteBuffer> pending;
+
+    // Sequence number of the next record, and of the last durable one
+    private long nextSequence;
+    private long flushedSequence;
+    private boolean flushing;
+    private IOException failure;
+
+    private WriteAheadLog(FileChannel channel) {
+        this.channel = channel;
+        this.lock = new ReentrantLock();
+        this.flushDone = lock.newCondition();
+        this.pending = new ArrayList<>();
+        this.nextSequence = 1;
+        this.flushedSequence = 0;
+    }
+
+    /**
+     * Opens the log at the given path, creating it if it doesn't exist
+     */
+    static WriteAheadLog open(String filePath) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return new WriteAheadLog(channel);
+    }
+
+    /**
+     * Reads all complete records. A torn or corrupt record at the end, left by
+     * a crash in the middle of a write, is cut off together with anything after it.
+     */
+    List<String[]> readRecords() throws IOException {
+        lock.lock();
+        try {
+            List<String[]> records = new ArrayList<>();
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            while (position + RECORD_HEADER_SIZE <= size) {
+                header.clear();
+                readFully(header, position);
+                int length = header.getInt(0);
+                int checksum = header.getInt(Integer.BYTES);
+                if (length < 0 || position + RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(payload, position + RECORD_HEADER_SIZE);
+                if (checksum(payload.array()) != checksum) {
+                    break;
+                }
+                records.add(decode(payload));
+                position += RECORD_HEADER_SIZE + length;
+            }
+            if (position < size) {
+                channel.truncate(position);
+            }
+            channel.position(position);
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a record and returns its sequence number for sync
+     */
+    long append(String operation, String... arguments) {
+        ByteBuffer record = encode(operation, arguments);
+        lock.lock();
+        try {
+            pending.add(record);
+            return nextSequence++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the record with the given sequence number is on disk,
+     * flushing the queue if no other thread is doing so
+     */
+    void sync(long sequence) throws IOException {
+        lock.lock();
+        try {
+            while (flushedSequence < sequence) {
+                if (failure != null) {
+                    throw new IOException("Write-ahead log is unavailable: " + failure.getMessage(), failure);
+                }
+                if (flushing) {
+                    flushDone.await();
+                    continue;
+                }
+
+                // Become the leader for everything queued so far
+                flushing = true;
+                ByteBuffer[] batch = pending.toArray(new ByteBuffer[0]);
+                pending.clear();
+                long batchEnd = nextSequence - 1;
+                lock.unlock();
+                IOException error = null;
+                try {
+                    for (ByteBuffer record : batch) {
+                        while (record.hasRemaining()) {
+                            channel.write(record);
+                        }
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+                flushing = false;
+                if (error == null) {
+                    flushedSequence = batchEnd;
+                } else {
+                    // Records of this batch may be lost, so nothing after them can be trusted either
+                    failure = error;
+                }
+                flushDone.signalAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the write-ahead log");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record and waits until it is on disk
+     */
+    void log(String operation, String... arguments) throws IOException {
+        sync(append(operation, arguments));
+    }
+
+    /**
+     * Empties the log once everything it describes has been saved to the table files
+     */
+    void truncate() throws IOException {
+        lock.lock();
+        try {
+            while (flushing) {
+                flushDone.awaitUninterruptibly();
+            }
+            pending.clear();
+            flushedSequence = nextSequence - 1;
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of write-ahead log");
+            }
+        }
+    }
+
+    private static ByteBuffer encode(String operation, String[] arguments) {
+        byte[][] strings = new byte[arguments.length + 1][];
+        strings[0] = operation.getBytes(StandardCharsets.UTF_8);
+        int length = Integer.BYTES + Integer.BYTES + strings[0].length;
+        for (int i = 0; i < arguments.length; i++) {
+            strings[i + 1] = arguments[i].getBytes(StandardCharsets.UTF_8);
+            length += Integer.BYTES + strings[i + 1].length;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.putInt(strings.length);
+        for (byte[] string : strings) {
+            payload.putInt(string.length);
+            payload.put(string);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.putInt(length);
+        record.putInt(checksum(payload.array()));
+        record.put(payload.array());
+        record.flip();
+        return record;
+    }
+
+    private static String[] decode(ByteBuffer payload) {
+        payload.flip();
+        String[] strings = new String[payload.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[payload.getInt()];
+            payload.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,166 @@
+package dbproject.model;
+
+import java.util.Arrays;
+
+/**
+ * Minimum, maximum and NULL count of a numeric column per block of
+ * BLOCK_SIZE rows, so scans can skip blocks that can't hold the value they
+ * look for. Values are ordered with Double.compare, the same order the
+ * equality predicates use, so NaN sorts above every other value and -0.0
+ * below 0.0.
+ *
+ * Appends widen the statistics of the last block. Changing a row only
+ * recomputes its block when the old value was the block's minimum or
+ * maximum, and removing rows recomputes the blocks from the first removed
+ * row on, since the later rows move down.
+ */
+class ZoneMap {
+    static final int BLOCK_SHIFT = 12;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private double[] min;
+    private double[] max;
+    private int[] nullCount;
+    private int blockCount;
+
+    ZoneMap() {
+        this.min = new double[1];
+        this.max = new double[1];
+        this.nullCount = new int[1];
+    }
+
+    private ZoneMap(ZoneMap source) {
+        this.min = Arrays.copyOf(source.min, source.blockCount);
+        this.max = Arrays.copyOf(source.max, source.blockCount);
+        this.nullCount = Arrays.copyOf(source.nullCount, source.blockCount);
+        this.blockCount = source.blockCount;
+    }
+
+    static int blockOf(int row) {
+        return row >>> BLOCK_SHIFT;
+    }
+
+    /**
+     * Returns the first row of the block after the one holding the given row
+     */
+    static int nextBlockStart(int row) {
+        return (blockOf(row) + 1) << BLOCK_SHIFT;
+    }
+
+    /**
+     * Returns a copy that no longer follows changes to this one
+     */
+    ZoneMap copy() {
+        return new ZoneMap(this);
+    }
+
+    double getMin(int block) {
+        return min[block];
+    }
+
+    double getMax(int block) {
+        return max[block];
+    }
+
+    int getNullCount(int block) {
+        return nullCount[block];
+    }
+
+    /**
+     * Checks whether a block may hold the given non-NULL value
+     */
+    boolean mayContain(int block, double value) {
+        return Double.compare(value, min[block]) >= 0 && Double.compare(value, max[block]) <= 0;
+    }
+
+    /**
+     * Checks whether a block may hold a value in the given inclusive range
+     */
+    boolean mayOverlap(int block, double low, double high) {
+        return Double.compare(high, min[block]) >= 0 && Double.compare(low, max[block]) <= 0;
+    }
+
+    /**
+     * Adds the statistics of the given rows, which were just appended to the column
+     */
+    void extend(NumericColumnData column, int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            int block = blockOf(row);
+            if (block == blockCount) {
+                addBlock();
+            }
+            include(block, column, row);
+        }
+    }
+
+    /**
+     * Updates the statistics after a row changed from the given old value
+     */
+    void update(NumericColumnData column, int row, boolean wasNull, double oldValue) {
+        int block = blockOf(row);
+        boolean isNull = column.isNull(row);
+        if (!wasNull && (Double.compare(oldValue, min[block]) == 0 || Double.compare(oldValue, max[block]) == 0)
+                && (isNull || Double.compare(oldValue, column.getDouble(row)) != 0)) {
+            // The old value may have been the only one at the edge of the block
+            recompute(column, block);
+            return;
+        }
+        if (wasNull) {
+            nullCount[block]--;
+        }
+        include(block, column, row);
+    }
+
+    /**
+     * Recomputes the statistics from the block holding the given row to the
+     * end of the column, after rows were removed from there on
+     */
+    void rebuildFrom(NumericColumnData column, int fromRow) {
+        int fromBlock = Math.min(blockOf(fromRow), blockCount);
+        blockCount = fromBlock;
+        extend(column, fromBlock << BLOCK_SHIFT, column.size());
+    }
+
+    long estimateBytes() {
+        return 20L * min.length;
+    }
+
+    private void recompute(NumericColumnData column, int block) {
+        reset(block);
+        int end = Math.min(nextBlockStart(block << BLOCK_SHIFT), column.size());
+        for (int row = block << BLOCK_SHIFT; row < end; row++) {
+            include(block, column, row);
+        }
+    }
+
+    private void include(int block, NumericColumnData column, int row) {
+        if (column.isNull(row)) {
+            nullCount[block]++;
+            return;
+        }
+        double value = column.getDouble(row);
+        if (Double.compare(value, min[block]) < 0) {
+            min[block] = value;
+        }
+        if (Double.compare(value, max[block]) > 0) {
+            max[block] = value;
+        }
+    }
+
+    private void addBlock() {
+        if (blockCount == min.length) {
+            int capacity = min.length * 2;
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+            nullCount = Arrays.copyOf(nullCount, capacity);
+        }
+        reset(blockCount++);
+    }
+
+    private void reset(int block) {
+        // An empty range, which no value compares into
+        min[block] = Double.POSITIVE_INFINITY;
+        max[block] = Double.NEGATIVE_INFINITY;
+        nullCount[block] = 0;
+    }
+}
@@ -1,95 +1,218 @@
 package dbproject.view;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
 import java.util.Scanner;
+import dbproject.model.RowCursor;
 import dbproject.model.Table;
-import dbproject.model.Row;
 import dbproject.model.Column;
 
 /**
- * Handles paginated display of table data
+ * Handles display of table data, page by page or in full. Rows are read
+ * through a RowCursor, so only the rows on the pages shown are evaluated.
+ *
+ * Pages are laid out in aligned columns whose widths are fixed from the
+ * headers and the first page, and each page is built in one buffer and
+ * written at once. Full output is streamed tab-separated through a single
+ * buffered writer instead of one print call per cell.
  */
 public class TablePrinter {
-    private static final int ROWS_PER_PAGE = 10; // Number of rows per page
-    
+    public static final int DEFAULT_PAGE_SIZE = 10; // Number of rows per page
+
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+    private static final String COLUMN_GAP = "  ";
+
     /**
      * Prints a table with pagination
      */
     public static void printTable(Table table, Scanner scanner) {
-        List<Row> rows = table.getRows();
-        int totalPages = (int) Math.ceil((double) rows.size() / ROWS_PER_PAGE);
-        
-        if (totalPages == 0) {
-            System.out.println("Table is empty");
+        printTable(table, scanner, System.out);
+    }
+
+    /**
+     * Prints a table with pagination to the given stream
+     */
+    public static void printTable(Table table, Scanner scanner, PrintStream out) {
+        printTable(table.cursor(), scanner, out, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Prints the rows of a cursor with pagination to the given stream. The
+     * number of pages is shown once the cursor has been read to the end.
+     */
+    public static void printTable(RowCursor cursor, Scanner scanner, PrintStream out, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        if (!cursor.hasRow(0)) {
+            out.println("Table is empty");
             return;
         }
-        
+
+        String[] headers = headers(cursor.getColumns());
+        int[] widths = columnWidths(cursor, headers, pageSize);
+        StringBuilder page = new StringBuilder();
         int currentPage = 0;
         boolean viewing = true;
-        
+
         while (viewing) {
-            printTablePage(table, rows, currentPage);
-            System.out.println("Page " + (currentPage + 1) + " of " + totalPages);
-            System.out.println("n: next page, p: previous page, q: quit");
-            System.out.print("> ");
-            
+            page.setLength(0);
+            renderPage(cursor, headers, widths, currentPage * pageSize, (currentPage + 1) * pageSize, page);
+            int knownSize = cursor.getKnownSize();
+            page.append("Page ").append(currentPage + 1);
+            if (knownSize >= 0) {
+                page.append(" of ").append((knownSize + pageSize - 1) / pageSize);
+            }
+            page.append(System.lineSeparator());
+            page.append("n: next page, p: previous page, q: quit").append(System.lineSeparator());
+            page.append("> ");
+            out.print(page);
+            out.flush();
+
+            if (!scanner.hasNextLine()) {
+                return;
+            }
             String command = scanner.nextLine().trim().toLowerCase();
             switch (command) {
                 case "n":
-                    if (currentPage < totalPages - 1) {
+                    if (cursor.hasRow((currentPage + 1) * pageSize)) {
                         currentPage++;
                     } else {
-                        System.out.println("Already at the last page");
+                        out.println("Already at the last page");
                     }
                     break;
-                    
+
                 case "p":
                     if (currentPage > 0) {
                         currentPage--;
                     } else {
-                        System.out.println("Already at the first page");
+                        out.println("Already at the first page");
                     }
                     break;
-                    
+
                 case "q":
                     viewing = false;
                     break;
-                    
+
                 default:
-                    System.out.println("Unknown command: " + command);
+                    out.println("Unknown command: " + command);
                     break;
             }
         }
     }
-    
+
+    /**
+     * Prints all rows of a table at once, without pagination
+     */
+    public static void printAll(Table table, PrintStream out) {
+        printAll(table.cursor(), out);
+    }
+
     /**
-     * Prints a single page of a table
+     * Streams all rows of a cursor to the given stream, without pagination
      */
-    private static void printTablePage(Table table, List<Row> rows, int page) {
-        // Calculate range for current page
-        int startRow = page * ROWS_PER_PAGE;
-        int endRow = Math.min(startRow + ROWS_PER_PAGE, rows.size());
-        
-        // Print column headers
-        List<Column> columns = table.getColumns();
-        for (int i = 0; i < columns.size(); i++) {
-            System.out.print(i + ": " + columns.get(i).getName() + " (" + columns.get(i).getType() + ")\t");
+    public static void printAll(RowCursor cursor, PrintStream out) {
+        if (!cursor.hasRow(0)) {
+            out.println("Table is empty");
+            return;
         }
-        System.out.println();
-        
-        // Print separator
-        for (int i = 0; i < columns.size(); i++) {
-            System.out.print("----------\t");
+        // The writer is only flushed, not closed, so the stream stays open
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out), STREAM_BUFFER_SIZE);
+        try {
+            writeAll(cursor, writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        System.out.println();
-        
-        // Print rows for current page
-        for (int i = startRow; i < endRow; i++) {
-            Row row = rows.get(i);
-            for (int j = 0; j < row.size(); j++) {
-                System.out.print(row.getCell(j).toString() + "\t");
+        out.flush();
+    }
+
+    /**
+     * Writes the column headers and every row of a cursor, tab-separated
+     */
+    public static void writeAll(RowCursor cursor, Writer writer) throws IOException {
+        String lineSeparator = System.lineSeparator();
+        List<Column> columns = cursor.getColumns();
+        int columnCount = columns.size();
+
+        for (String header : headers(columns)) {
+            writer.write(header);
+            writer.write('\t');
+        }
+        writer.write(lineSeparator);
+        for (int i = 0; i < columnCount; i++) {
+            writer.write("----------\t");
+        }
+        writer.write(lineSeparator);
+
+        for (int row = 0; cursor.hasRow(row); row++) {
+            for (int i = 0; i < columnCount; i++) {
+                writer.write(cursor.format(row, i));
+                writer.write('\t');
             }
-            System.out.println();
+            writer.write(lineSeparator);
+        }
+    }
+
+    private static String[] headers(List<Column> columns) {
+        String[] headers = new String[columns.size()];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = i + ": " + columns.get(i).getName() + " (" + columns.get(i).getType() + ")";
+        }
+        return headers;
+    }
+
+    /**
+     * Sizes each column to its header and the values on the first page, so
+     * the layout stays the same while paging; longer values on later pages
+     * just push the rest of their line to the right
+     */
+    private static int[] columnWidths(RowCursor cursor, String[] headers, int pageSize) {
+        int[] widths = new int[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            widths[i] = headers[i].length();
+        }
+        for (int row = 0; row < pageSize && cursor.hasRow(row); row++) {
+            for (int i = 0; i < headers.length; i++) {
+                widths[i] = Math.max(widths[i], cursor.format(row, i).length());
+            }
+        }
+        return widths;
+    }
+
+    /**
+     * Appends the column headers and a range of the rows of a cursor to the page
+     */
+    private static void renderPage(RowCursor cursor, String[] headers, int[] widths, int startRow, int endRow,
+                                   StringBuilder page) {
+        String lineSeparator = System.lineSeparator();
+        for (int i = 0; i < headers.length; i++) {
+            appendPadded(page, headers[i], widths[i], ' ');
+        }
+        page.append(lineSeparator);
+        for (int i = 0; i < headers.length; i++) {
+            appendPadded(page, "", widths[i], '-');
+        }
+        page.append(lineSeparator);
+
+        for (int row = startRow; row < endRow && cursor.hasRow(row); row++) {
+            for (int i = 0; i < headers.length; i++) {
+                appendPadded(page, cursor.format(row, i), widths[i], ' ');
+            }
+            page.append(lineSeparator);
+        }
+    }
+
+    private static void appendPadded(StringBuilder page, String value, int width, char padding) {
+        page.append(value);
+        for (int i = value.length(); i < width; i++) {
+            page.append(padding);
         }
+        page.append(COLUMN_GAP);
     }
-}
\ No newline at end of file
+}